@@ -1,32 +1,122 @@
 package smk.client;
 
 import smk.shared.LamportClock;
+import smk.shared.LineChannel;
+import smk.shared.LocalTransport;
 import smk.shared.Message;
 import smk.shared.Message.MessageType;
+import smk.shared.OrderPriority;
+import smk.shared.Settings;
+import smk.shared.TlsChannel;
 
-import java.io.*;
-import java.net.Socket;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Simple TCP client that sends orders and listens for READY/other messages.
  * Networking runs off the FX thread; callbacks should update UI via Platform.runLater.
+ *
+ * ORDERs stay in an outbox until the server acks them with READY.
+ * If the connection drops, the service reconnects with exponential backoff and resends
+ * the outbox; the server drops duplicates using the session id carried on each ORDER.
+ *
+ * Every ORDER gets a request id that the server echoes on READY/START/DONE, so many
+ * orders can be in flight at once: {@link #sendOrder} returns a future completed by the
+ * matching READY, and the send-to-ack latency of each request is recorded.
+ * A BUSY reply (server admission control) keeps the order pending and resends it
+ * after the server's retry-after delay.
+ * The server PINGs idle connections; we answer with PONG. If nothing at all arrives for
+ * READ_TIMEOUT_MS (several missed pings) the connection is treated as dead and redialled.
+ * The wire is a {@link LineChannel}: UTF-8, bounded lines, and a burst of ORDERs goes out
+ * in coalesced writes.
+ *
+ * When the server runs on this machine and its Unix-domain socket exists, that is used
+ * instead of TCP (see {@link LocalTransport}); if it fails we fall back to TCP.
+ * With SMK_TLS=1 the TCP connection is TLS ({@link TlsChannel}); redials resume the
+ * cached session, and the backoff is jittered so terminals that lost the network together
+ * don't all reconnect in the same instant.
+ *
+ * A server that is stopping says SHUTDOWN (optionally with a host:port to use instead)
+ * and then ends the stream. From SHUTDOWN on nothing new is sent; READYs still arrive
+ * until the end of the stream, and whatever stays un-acked goes to the next server from
+ * the outbox.
  */
 public class ClientSocketService {
 
     public interface Listener {
         void onReady(Message m, int lamportAfter);
-        void onEvent(Message m, int lamportAfter); 
+        void onEvent(Message m, int lamportAfter);
         void onLog(String msg);
     }
 
-    private final String host;
-    private final int port;
+    private static final long BACKOFF_MIN_MS = 250;
+    private static final long BACKOFF_MAX_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 45_000;
+    private static final int MAX_QUEUED_FRAMES = 65_536;
+    private static final int CONNECT_TIMEOUT_MS = (int) Settings.get("SMK_CONNECT_TIMEOUT_MS", 5_000);
+    private static final long TLS_HANDSHAKE_MS = (long) Settings.get("SMK_TLS_HANDSHAKE_MS", 10_000);
+
+    private volatile String host;
+    private volatile int port;
     private final LamportClock clock;
     private final Listener listener;
+    private final String session = UUID.randomUUID().toString().substring(0, 8);
+    private volatile String menuVersion; // catalog version stamped on every ORDER, null = not sent
+
+    /** One un-acked ORDER. */
+    private static final class Pending {
+        final Message msg;
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+        final long sentNanos = System.nanoTime();
+        Pending(Message msg) { this.msg = msg; }
+    }
+
+    // un-acked ORDERs by request id, in send order
+    private final Map<Long, Pending> outbox = new LinkedHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong(1);
+    private final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "client-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // ack latency (send -> READY), nanoseconds
+    private final LongAdder ackCount = new LongAdder();
+    private final LongAdder ackTotalNanos = new LongAdder();
+    private final LongAccumulator ackMaxNanos = new LongAccumulator(Math::max, 0);
 
-    private Socket socket;
-    private PrintWriter out;
+    private volatile LineChannel io;
+    private volatile long lastReadNanos;
+    private volatile boolean serverLeaving; // SHUTDOWN received on the current connection
+    private volatile long reconnectHintMs;
     private Thread readerThread;
+    private Thread reconnectThread;
+    private final Object dialLock = new Object(); // one dial at a time; never held by disconnect()
+    private volatile SocketChannel dialing;       // TCP socket being connected or handshaken
+    private volatile boolean closed = false;
 
     public ClientSocketService(String host, int port, LamportClock clock, Listener listener) {
         this.host = host;
@@ -35,58 +125,340 @@ public class ClientSocketService {
         this.listener = listener;
     }
 
+    /**
+     * Start connecting; returns at once. The first attempt runs on the reconnect thread,
+     * so a dead or slow server never holds up the caller (typically the FX thread).
+     */
     public void connect() {
-        try {
-            socket = new Socket(host, port);
-            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+        closed = false;
+        scheduleReconnect(true);
+    }
 
-            readerThread = new Thread(this::readLoop, "client-read-loop");
-            readerThread.setDaemon(true);
-            readerThread.start();
-            log("[NET] Connected to " + host + ":" + port);
+    /**
+     * One dial: unix socket if there is one, else TCP within CONNECT_TIMEOUT_MS and, with
+     * TLS, a handshake within TLS_HANDSHAKE_MS. The dial runs outside this object's monitor
+     * so disconnect() never waits for it; disconnect() closes the socket being dialled instead.
+     */
+    private boolean tryConnect() {
+        synchronized (dialLock) {
+            if (LocalTransport.enabled() && LocalTransport.isLocalHost(host)) {
+                Path path = LocalTransport.socketPath(port);
+                if (Files.exists(path)) {
+                    try {
+                        return attach(LocalTransport.connect(path), "unix " + path);
+                    } catch (IOException e) {
+                        log("[NET][WARN] local socket " + path + ": " + e.getMessage() + ", using TCP");
+                    }
+                }
+            }
+            SocketChannel ch = null;
+            try {
+                ch = SocketChannel.open();
+                dialing = ch;
+                if (closed) throw new ClosedChannelException(); // disconnect() missed it
+                // the adaptor's timed connect is a non-blocking connect plus a bounded wait
+                ch.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                ch.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true); // LineChannel coalesces; Nagle would only add delay
+                if (!TlsChannel.enabled()) return attach(ch, host + ":" + port);
+                TlsChannel t = handshake(ch);
+                return attach(t, host + ":" + port + " (TLS" + (t.isResumed() ? ", resumed)" : ")"));
+            } catch (IOException e) {
+                closeQuietly(ch);
+                if (!closed) log("[NET][ERR] " + host + ":" + port + ": " + e.getMessage());
+                return false;
+            } finally {
+                dialing = null;
+            }
+        }
+    }
+
+    /** Client side of the TLS handshake; a server that stalls it is cut off. */
+    private TlsChannel handshake(SocketChannel ch) throws IOException {
+        ScheduledFuture<?> deadline = retryTimer.schedule(() -> closeQuietly(ch),
+                TLS_HANDSHAKE_MS, TimeUnit.MILLISECONDS);
+        try {
+            return TlsChannel.client(ch, host, port);
         } catch (IOException e) {
-            log("[NET][ERR] " + e.getMessage());
+            if (deadline.cancel(false) || closed) throw e;
+            throw new SocketTimeoutException("TLS handshake timed out after " + TLS_HANDSHAKE_MS + "ms");
+        } finally {
+            deadline.cancel(false);
         }
     }
 
-    /** Tick Lamport and send an ORDER message. */
-    public void sendOrder(String client, String dish) {
-        if (out == null) {
-            log("[NET][WARN] Not connected.");
-            return;
+    /** Make {@code ch} the connection, unless disconnect() came first; false then. */
+    private synchronized <C extends ByteChannel & GatheringByteChannel> boolean attach(C ch, String where) {
+        if (closed) {
+            closeQuietly(ch);
+            return false;
         }
+        // this dial succeeded, so the reconnect thread is done: let a reader that loses the
+        // connection right away (server full, or already draining) schedule the next one
+        if (reconnectThread == Thread.currentThread()) reconnectThread = null;
+        LineChannel c = new LineChannel(ch, retryTimer, MAX_QUEUED_FRAMES);
+        serverLeaving = false;
+        io = c;
+        lastReadNanos = System.nanoTime();
+        readerThread = new Thread(() -> readLoop(c), "client-read-loop");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        watchReads(c);
+        log("[NET] Connected to " + where);
+        resendOutbox();
+        return true;
+    }
+
+    private static void closeQuietly(Channel ch) {
+        if (ch == null) return;
+        try { ch.close(); } catch (IOException ignored) {}
+    }
+
+    /** Channels have no SO_TIMEOUT; close the connection ourselves if reads go quiet. */
+    private void watchReads(LineChannel c) {
+        retryTimer.schedule(() -> {
+            if (io != c) return; // replaced or dropped
+            if (System.nanoTime() - lastReadNanos > TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MS)) {
+                log("[NET][ERR] no data for " + READ_TIMEOUT_MS + "ms");
+                c.close();
+            } else {
+                watchReads(c);
+            }
+        }, 5, TimeUnit.SECONDS);
+    }
+
+    private void scheduleReconnect() {
+        scheduleReconnect(false);
+    }
+
+    private synchronized void scheduleReconnect(boolean now) {
+        if (closed || (reconnectThread != null && reconnectThread.isAlive())) return;
+        reconnectThread = new Thread(() -> reconnectLoop(now), "client-reconnect");
+        reconnectThread.setDaemon(true);
+        reconnectThread.start();
+    }
+
+    private void reconnectLoop(boolean now) {
+        if (now && tryConnect()) return;
+        long delay = BACKOFF_MIN_MS;
+        long notBefore = reconnectHintMs; // a stopping server's retry hint is a floor for the first try
+        reconnectHintMs = 0;
+        while (!closed) {
+            long wait = notBefore + delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+            notBefore = 0;
+            log("[NET] Reconnecting in " + wait + "ms (" + pendingCount() + " pending)");
+            try { Thread.sleep(wait); }
+            catch (InterruptedException e) { return; }
+            if (closed || tryConnect()) return;
+            delay = Math.min(BACKOFF_MAX_MS, delay * 2);
+        }
+    }
+
+    /**
+     * Tick Lamport and send an ORDER message. If offline it is kept and sent on reconnect.
+     * The future completes with the server's READY for this very order.
+     */
+    public CompletableFuture<Message> sendOrder(String client, String dish) {
+        return sendOrder(client, dish, OrderPriority.NORMAL);
+    }
+
+    /** Same, in a priority class (RUSH/VIP jump ahead of NORMAL orders on the server). */
+    public CompletableFuture<Message> sendOrder(String client, String dish, OrderPriority priority) {
+        return sendOrder(client, dish, null, priority);
+    }
+
+    /**
+     * Same, naming the dish by its catalog id as well; the server resolves the id, the name
+     * is for display and for servers that predate ids.
+     */
+    public CompletableFuture<Message> sendOrder(String client, String dish, String dishId, OrderPriority priority) {
         int ts = clock.tick();
         Message m = new Message(MessageType.ORDER, client, dish, ts, 0, null);
-        out.println(m.toJson());
-        log("[SEND] " + client + " " + dish + " ts=" + ts);
+        m.setSession(session);
+        m.setPriority(priority);
+        m.setDishId(dishId);
+        m.setMenu(menuVersion);
+        m.setRequestId(nextRequestId.getAndIncrement());
+        Pending p = new Pending(m);
+        synchronized (outbox) {
+            outbox.put(m.getRequestId(), p);
+        }
+        if (!send(m)) {
+            log("[NET][WARN] Not connected, order queued: " + client + " " + dish + " ts=" + ts);
+            return p.future;
+        }
+        log("[SEND] " + client + " " + dish + " ts=" + ts + " req=" + m.getRequestId());
+        return p.future;
     }
 
-    private void readLoop() {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+    /** Random id of this terminal process, sent on every ORDER and echoed on its replies. */
+    public String getSession() { return session; }
+
+    /** Catalog version this terminal orders from; sent with each ORDER so the server can spot drift. */
+    public void setMenuVersion(String version) { this.menuVersion = version; }
+
+    public long getAckCount() { return ackCount.sum(); }
+
+    public long getAvgAckMicros() {
+        long n = ackCount.sum();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(ackTotalNanos.sum() / n);
+    }
+
+    public long getMaxAckMicros() { return TimeUnit.NANOSECONDS.toMicros(ackMaxNanos.get()); }
+
+    public int pendingCount() {
+        synchronized (outbox) { return outbox.size(); }
+    }
+
+    private void resendOutbox() {
+        List<Pending> pending;
+        synchronized (outbox) { pending = new ArrayList<>(outbox.values()); }
+        if (pending.isEmpty()) return;
+        LineChannel c = io;
+        if (c == null) return;
+        c.cork(); // one coalesced burst instead of a write per order
+        try {
+            for (Pending p : pending) {
+                if (!send(p.msg)) return;
+            }
+        } finally {
+            c.uncork();
+        }
+        log("[NET] Resent " + pending.size() + " un-acked order(s)");
+    }
+
+    /**
+     * Queue one line for the server; false if offline. Never blocks: the channel's writer
+     * thread does the socket write, so the FX thread can call this. A full queue or a
+     * failed write drops the connection.
+     */
+    private boolean send(Message m) {
+        LineChannel c = io;
+        if (c == null || serverLeaving) return false;
+        if (c.send(LineChannel.frame(m.toJson()))) return true;
+        log("[NET][ERR] send queue full or connection closed");
+        c.close(); // the read loop sees it and reconnects
+        return false;
+    }
+
+    private void readLoop(LineChannel in) {
+        try (in) {
             String line;
             while ((line = in.readLine()) != null) {
+                lastReadNanos = System.nanoTime();
                 log("[NET][RAW] " + line);
                 Message m = Message.fromJson(line);
                 if (m.getType() == MessageType.READY) {
                     int lam = clock.onReceive(m.getLamport());
                     listener.onReady(m, lam);
+                    acknowledge(m);
+                } else if (m.getType() == MessageType.PING) {
+                    send(new Message(MessageType.PONG, null, null, 0, 0, null));
+                } else if (m.getType() == MessageType.PONG) {
+                    // liveness only
+                } else if (m.getType() == MessageType.BUSY) {
+                    clock.onReceive(m.getLamport());
+                    scheduleRetry(m);
                 } else if (m.getType() == MessageType.START || m.getType() == MessageType.DONE) {
                     int lam = clock.onReceive(m.getLamport());
                     listener.onEvent(m, lam);
+                } else if (m.getType() == MessageType.SHUTDOWN) {
+                    clock.onReceive(m.getLamport());
+                    serverLeaving = true;
+                    reconnectHintMs = m.getRetryAfterMs();
+                    redirect(m.getText());
+                    log("[NET] Server shutting down; reconnecting to " + host + ":" + port
+                            + " in ~" + m.getRetryAfterMs() + "ms");
+                } else if (m.getType() == MessageType.ETA) {
+                    // advisory only, not a causal event: leave the clock alone
+                    listener.onEvent(m, clock.now());
                 } else {
                     log("[NET] unknown " + line);
                 }
             }
         } catch (IOException e) {
-            log("[NET][ERR] " + e.getMessage());
+            if (!closed) log("[NET][ERR] " + e.getMessage());
         } finally {
-            disconnect();
+            dropConnection(in);
+            scheduleReconnect();
+        }
+    }
+
+    /** Follow a SHUTDOWN's {@code host:port} for the next connection. */
+    private void redirect(String target) {
+        if (target == null || target.isBlank()) return;
+        int colon = target.lastIndexOf(':');
+        try {
+            int p = colon < 0 ? port : Integer.parseInt(target.substring(colon + 1).trim());
+            String h = colon < 0 ? target.trim() : target.substring(0, colon).trim();
+            if (!h.isEmpty()) host = h;
+            port = p;
+        } catch (NumberFormatException e) {
+            log("[NET][WARN] bad redirect '" + target + "' ignored");
+        }
+    }
+
+    /** Resend the ORDER a BUSY refers to once the retry-after delay has passed. */
+    private void scheduleRetry(Message busy) {
+        Pending p;
+        synchronized (outbox) { p = outbox.get(busy.getRequestId()); }
+        if (p == null) return;
+        int delay = Math.max(50, busy.getRetryAfterMs());
+        log("[NET][BUSY] req=" + busy.getRequestId() + " " + busy.getText() + ", retry in " + delay + "ms");
+        retryTimer.schedule(() -> {
+            boolean stillPending;
+            synchronized (outbox) { stillPending = outbox.containsKey(busy.getRequestId()); }
+            // if offline, the reconnect path resends the whole outbox anyway
+            if (stillPending) send(p.msg);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /** Complete the pending request matching this READY and record its latency. */
+    private void acknowledge(Message ready) {
+        Pending p;
+        synchronized (outbox) {
+            p = outbox.remove(ready.getRequestId());
+            if (p == null) {
+                // older server without request ids: fall back to (client, ts)
+                var it = outbox.values().iterator();
+                while (it.hasNext()) {
+                    Pending c = it.next();
+                    if (c.msg.getTs() == ready.getTs() && c.msg.getClient().equals(ready.getClient())) {
+                        p = c;
+                        it.remove();
+                        break;
+                    }
+                }
+            }
         }
+        if (p == null) return; // duplicate READY after a resend
+        long nanos = System.nanoTime() - p.sentNanos;
+        ackCount.increment();
+        ackTotalNanos.add(nanos);
+        ackMaxNanos.accumulate(nanos);
+        log("[ACK] req=" + p.msg.getRequestId() + " in " + TimeUnit.NANOSECONDS.toMicros(nanos) + "us");
+        p.future.complete(ready);
     }
 
+    private synchronized void dropConnection(LineChannel c) {
+        c.close();
+        if (io == c) {
+            io = null;
+            if (!closed) log(serverLeaving ? "[NET] Server closed the connection." : "[NET] Connection lost.");
+        }
+    }
+
+    /** Close for good; stops reconnect attempts. Un-acked orders stay in the outbox. */
     public void disconnect() {
-        try { if (socket != null) socket.close(); } catch (IOException ignored) {}
-        out = null;
+        closed = true;
+        Thread r;
+        synchronized (this) { r = reconnectThread; }
+        if (r != null) r.interrupt();
+        closeQuietly(dialing); // aborts a connect or handshake in progress
+        synchronized (this) {
+            if (io != null) io.close();
+            io = null;
+        }
         log("[NET] Disconnected.");
     }
 
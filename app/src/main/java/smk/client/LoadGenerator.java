@@ -0,0 +1,109 @@
+package smk.client;
+
+import smk.shared.Dish;
+import smk.shared.LamportClock;
+import smk.shared.MenuCatalog;
+import smk.shared.Message;
+import smk.shared.OrderPriority;
+import smk.shared.Settings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless client load: N terminals placing orders with Poisson arrivals against a running
+ * server. With the server's simulated chefs on (SMK_SIM=1) this measures saturation
+ * throughput and queue growth end to end.
+ *
+ * Settings: SMK_SERVER_HOST / SMK_SERVER_PORT, SMK_LOAD_CLIENTS (default 4),
+ * SMK_LOAD_RATE (orders per minute per client, default 30), SMK_LOAD_RUSH_PCT (default 5),
+ * SMK_LOAD_SECONDS (0 = until killed).
+ */
+public class LoadGenerator {
+
+    private static final LongAdder sent = new LongAdder();
+    private static final LongAdder done = new LongAdder();
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = Settings.get("SMK_SERVER_HOST", "localhost");
+        int port = (int) Settings.get("SMK_SERVER_PORT", 5000);
+        int clients = (int) Settings.get("SMK_LOAD_CLIENTS", 4);
+        double perMinute = Settings.get("SMK_LOAD_RATE", 30);
+        double rushPct = Settings.get("SMK_LOAD_RUSH_PCT", 5);
+        long seconds = (long) Settings.get("SMK_LOAD_SECONDS", 0);
+
+        MenuCatalog.Snapshot menu = MenuCatalog.fromEnvironment(new MenuCatalog.Listener() {
+            @Override public void onCatalog(MenuCatalog.Snapshot snapshot) {}
+            @Override public void onLog(String msg) { System.out.println(msg); }
+        }).load();
+        List<Dish> dishes = menu.getDishes();
+        if (dishes.isEmpty()) {
+            System.err.println("[LOAD] empty menu");
+            return;
+        }
+        if (clients < 1 || perMinute <= 0) {
+            System.err.println("[LOAD] SMK_LOAD_CLIENTS and SMK_LOAD_RATE must be positive");
+            return;
+        }
+
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "load-generator");
+            t.setDaemon(true);
+            return t;
+        });
+        List<ClientSocketService> terminals = new ArrayList<>();
+        Random rnd = new Random();
+        for (int i = 1; i <= clients; i++) {
+            String name = "load-" + i;
+            ClientSocketService net = new ClientSocketService(host, port, new LamportClock(), new ClientSocketService.Listener() {
+                @Override public void onReady(Message m, int lamportAfter) {}
+                @Override public void onEvent(Message m, int lamportAfter) {
+                    if (m.getType() == Message.MessageType.DONE && name.equals(m.getClient())) done.increment();
+                }
+                @Override public void onLog(String msg) {
+                    if (msg.contains("[ERR]") || msg.contains("[BUSY]")) System.out.println("[" + name + "] " + msg);
+                }
+            });
+            net.setMenuVersion(menu.getVersion());
+            net.connect();
+            terminals.add(net);
+            scheduleNext(timer, net, name, dishes, perMinute, rushPct, rnd);
+        }
+
+        long start = System.nanoTime();
+        long lastSent = 0, lastDone = 0;
+        while (seconds <= 0 || System.nanoTime() - start < seconds * 1_000_000_000L) {
+            Thread.sleep(5000);
+            long s = sent.sum(), d = done.sum(), acked = 0, pending = 0, avgAck = 0;
+            for (ClientSocketService t : terminals) {
+                acked += t.getAckCount();
+                pending += t.pendingCount();
+                avgAck += t.getAvgAckMicros();
+            }
+            System.out.printf("[LOAD] sent %d (%.0f/min), acked %d, pending %d, done %d (%.0f/min), ack avg %dus%n",
+                    s, (s - lastSent) * 12.0, acked, pending, d, (d - lastDone) * 12.0, avgAck / terminals.size());
+            lastSent = s;
+            lastDone = d;
+        }
+        timer.shutdownNow();
+        for (ClientSocketService t : terminals) t.disconnect();
+    }
+
+    /** Poisson arrivals: exponential gaps with the configured mean rate. */
+    private static void scheduleNext(ScheduledExecutorService timer, ClientSocketService net, String name,
+                                     List<Dish> dishes, double perMinute, double rushPct, Random rnd) {
+        long gapMs = Math.max(1, Math.round(-Math.log(1 - rnd.nextDouble()) * 60_000 / perMinute));
+        timer.schedule(() -> {
+            Dish d = dishes.get(rnd.nextInt(dishes.size()));
+            OrderPriority p = rnd.nextDouble() * 100 < rushPct ? OrderPriority.RUSH : OrderPriority.NORMAL;
+            net.sendOrder(name, d.getName(), d.getId(), p);
+            sent.increment();
+            scheduleNext(timer, net, name, dishes, perMinute, rushPct, rnd);
+        }, gapMs, TimeUnit.MILLISECONDS);
+    }
+}
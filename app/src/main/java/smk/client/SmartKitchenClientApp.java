@@ -75,6 +75,8 @@ public class SmartKitchenClientApp extends Application {
                         log("[INFO] " + m.getDish() + " est en préparation.");
                     } else if (m.getType() == Message.MessageType.DONE) {
                         log("[INFO] " + m.getDish() + " est en cours de livraison.");
+                    } else if (m.getType() == Message.MessageType.ETA) {
+                        log("[ETA] " + m.getDish() + " ~" + java.time.Instant.ofEpochMilli(m.getEtaMs()));
                     } else {
                         log("[" + m.getType() + "] " + m.getDish() + " Ls=" + m.getLamport() + " Lc=" + lamportAfter);
                     }
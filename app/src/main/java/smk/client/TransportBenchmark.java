@@ -0,0 +1,189 @@
+package smk.client;
+
+import smk.server.ServerSocketService;
+import smk.shared.LamportClock;
+import smk.shared.LineChannel;
+import smk.shared.Message;
+import smk.shared.Message.MessageType;
+import smk.shared.Settings;
+import smk.shared.TlsChannel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Plaintext vs TLS on loopback, against an in-process server: what a reconnect costs
+ * (full handshake, resumed handshake), request/reply latency, and pipelined throughput.
+ *
+ * Uses SMK_TLS_KEYSTORE if set, otherwise makes a throwaway self-signed keystore with
+ * keytool. Settings: SMK_BENCH_PORT (default 5100), SMK_BENCH_CONNECTS (default 200),
+ * SMK_BENCH_ORDERS (default 20000), SMK_BENCH_WINDOW (orders in flight, default 200).
+ */
+public class TransportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int port = (int) Settings.get("SMK_BENCH_PORT", 5100);
+        int connects = (int) Settings.get("SMK_BENCH_CONNECTS", 200);
+        int orders = (int) Settings.get("SMK_BENCH_ORDERS", 20_000);
+        int window = (int) Settings.get("SMK_BENCH_WINDOW", 200);
+
+        System.setProperty("SMK_UNIX", "0"); // measure TCP even on one machine
+        System.setProperty("SMK_METRICS_PORT", "0");
+        for (String k : new String[] { "SMK_RATE_PER_CLIENT", "SMK_BURST_PER_CLIENT", "SMK_MAX_QUEUE" }) {
+            System.setProperty(k, "1000000000");
+        }
+        if (Settings.get("SMK_TLS_KEYSTORE") == null) {
+            Path ks = selfSignedKeystore();
+            System.setProperty("SMK_TLS_KEYSTORE", ks.toString());
+            System.setProperty("SMK_TLS_KEYSTORE_PASSWORD", "changeit");
+        }
+
+        System.out.printf("%-6s %12s %12s %12s %12s %12s %14s%n",
+                "", "connect", "full hs", "resumed hs", "rtt p50", "rtt p99", "pipelined");
+        for (boolean tls : new boolean[] { false, true }) {
+            System.setProperty("SMK_TLS", tls ? "1" : "0");
+            LamportClock clock = new LamportClock();
+            ServerSocketService server = new ServerSocketService(port, clock, new ServerSocketService.Listener() {
+                @Override public int onOrder(String client, String dish, int ts) { return clock.onReceive(ts); }
+                @Override public void onLog(String msg) { if (msg.contains("[ERR]")) System.err.println(msg); }
+            });
+            server.start();
+            Thread.sleep(200);
+            try {
+                Row row = new Row();
+                measureConnects(port, connects, tls, row);
+                measureClient(port, orders, window, row);
+                System.out.printf("%-6s %10.0fus %10.0fus %10.0fus %10.0fus %10.0fus %10.0f/s%n",
+                        tls ? "tls" : "plain", row.connectUs, row.fullUs, row.resumedUs, row.p50Us, row.p99Us, row.perSecond);
+            } finally {
+                server.stop();
+                Thread.sleep(200);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static final class Row {
+        double connectUs, fullUs, resumedUs, p50Us, p99Us, perSecond;
+    }
+
+    /**
+     * New connection + one ORDER/READY, as a terminal does after a drop. With TLS, once
+     * with each session thrown away (every handshake full) and once resuming.
+     */
+    private static void measureConnects(int port, int n, boolean tls, Row row) throws Exception {
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+        try {
+            if (!tls) {
+                row.connectUs = connectLoop(port, n, false, false, flusher);
+                return;
+            }
+            row.fullUs = connectLoop(port, n, true, true, flusher);
+            row.resumedUs = connectLoop(port, n, true, false, flusher);
+            row.connectUs = row.resumedUs;
+        } finally {
+            flusher.shutdownNow();
+        }
+    }
+
+    private static double connectLoop(int port, int n, boolean tls, boolean forgetSessions,
+                                      ScheduledExecutorService flusher) throws Exception {
+        long total = 0;
+        int resumed = 0;
+        for (int i = 0; i < n; i++) {
+            long t0 = System.nanoTime();
+            SocketChannel ch = SocketChannel.open(new InetSocketAddress("localhost", port));
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (tls) {
+                TlsChannel t = TlsChannel.client(ch, "localhost", port);
+                if (t.isResumed()) resumed++;
+                roundTrip(t, flusher, i);
+                if (forgetSessions) t.session().invalidate();
+                t.close();
+            } else {
+                roundTrip(ch, flusher, i);
+                ch.close();
+            }
+            total += System.nanoTime() - t0;
+        }
+        if (tls) System.out.printf("  (%d/%d resumed%s)%n", resumed, n, forgetSessions ? ", sessions discarded" : "");
+        return total / 1000.0 / n;
+    }
+
+    private static <C extends ByteChannel & GatheringByteChannel> void roundTrip(C ch, ScheduledExecutorService flusher, int i)
+            throws IOException {
+        LineChannel io = new LineChannel(ch, flusher, 16);
+        io.send(LineChannel.frame(new Message(MessageType.ORDER, "bench", "dish", i + 1, 0, null).toJson()));
+        String line;
+        while ((line = io.readLine()) != null) {
+            if (Message.fromJson(line).getType() == MessageType.READY) return;
+        }
+        throw new IOException("connection closed before READY");
+    }
+
+    /** Sequential round trips for latency, then a window of orders in flight for throughput. */
+    private static void measureClient(int port, int orders, int window, Row row) throws Exception {
+        CompletableFuture<Void> up = new CompletableFuture<>();
+        ClientSocketService net = new ClientSocketService("localhost", port, new LamportClock(), new ClientSocketService.Listener() {
+            @Override public void onReady(Message m, int lamportAfter) {}
+            @Override public void onEvent(Message m, int lamportAfter) {}
+            @Override public void onLog(String msg) {
+                if (msg.startsWith("[NET] Connected")) up.complete(null);
+                if (msg.contains("[ERR]")) System.err.println(msg);
+            }
+        });
+        net.connect();
+        up.get();
+        try {
+            int n = Math.max(1000, orders / 10);
+            long[] rtt = new long[n];
+            for (int i = 0; i < n; i++) {
+                long t0 = System.nanoTime();
+                net.sendOrder("bench", "dish").get();
+                rtt[i] = System.nanoTime() - t0;
+            }
+            Arrays.sort(rtt);
+            row.p50Us = rtt[n / 2] / 1000.0;
+            row.p99Us = rtt[(int) (n * 0.99)] / 1000.0;
+
+            Deque<CompletableFuture<Message>> inFlight = new ArrayDeque<>();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < orders; i++) {
+                if (inFlight.size() >= window) inFlight.poll().get();
+                inFlight.add(net.sendOrder("bench", "dish"));
+            }
+            for (CompletableFuture<Message> f : inFlight) f.get();
+            row.perSecond = orders / ((System.nanoTime() - t0) / 1e9);
+        } finally {
+            net.disconnect();
+        }
+    }
+
+    private static Path selfSignedKeystore() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("smk-bench");
+        Path ks = dir.resolve("bench.p12");
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process p = new ProcessBuilder(keytool, "-genkeypair", "-alias", "smk", "-keyalg", "EC",
+                "-groupname", "secp256r1", "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-validity", "2", "-storetype", "PKCS12", "-keystore", ks.toString(),
+                "-storepass", "changeit", "-keypass", "changeit")
+                .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (p.waitFor() != 0) throw new IOException("keytool failed; set SMK_TLS_KEYSTORE");
+        ks.toFile().deleteOnExit();
+        dir.toFile().deleteOnExit();
+        return ks;
+    }
+}
@@ -0,0 +1,133 @@
+package smk.client.ui;
+
+import javafx.beans.Observable;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cart rows indexed by catalog id (by name for dishes without one), with running totals.
+ * Totals are adjusted by deltas from each row's qty listener instead of re-summing the cart,
+ * and the row list uses an extractor so a qty, status, price or name change only updates
+ * that row's cell.
+ * All methods must be called on the FX thread.
+ */
+public class CartModel {
+
+    public static final int MAX_QTY = 20;
+
+    private final ObservableList<CartRow> rows =
+            FXCollections.observableArrayList(r -> new Observable[] {
+                    r.qtyProperty(), r.statusProperty(), r.unitProperty(), r.dishProperty() });
+    private final Map<String, CartRow> byKey = new HashMap<>();
+    private final Map<CartRow, ChangeListener<Number>> qtyListeners = new HashMap<>();
+
+    private final IntegerProperty items = new SimpleIntegerProperty(0);
+    private final IntegerProperty subtotal = new SimpleIntegerProperty(0);
+
+    public ObservableList<CartRow> getRows() { return rows; }
+
+    public ReadOnlyIntegerProperty itemsProperty() { return items; }
+    public ReadOnlyIntegerProperty subtotalProperty() { return subtotal; }
+    public int getItems() { return items.get(); }
+    public int getSubtotal() { return subtotal.get(); }
+
+    public boolean isEmpty() { return rows.isEmpty(); }
+    public int size() { return rows.size(); }
+    public CartRow get(String dishId, String dish) { return byKey.get(key(dishId, dish)); }
+
+    /** Ids and names are kept apart so a dish named like another one's id can't collide. */
+    private static String key(String dishId, String dish) {
+        return dishId != null ? "#" + dishId : "=" + dish;
+    }
+
+    private static String key(CartRow row) { return key(row.getDishId(), row.getDish()); }
+
+    /** Add qty of a dish, merging into the existing row if there is one. Returns the row. */
+    public CartRow add(String dish, String stem, int unit, int qty) {
+        return add(null, dish, stem, unit, qty);
+    }
+
+    /**
+     * Same, remembering the catalog id so the order goes out by id. A dish with an id merges
+     * by id, so a renamed or repriced dish lands on its row; the row takes the new name and
+     * price, and the subtotal moves by the price difference on the qty already there.
+     */
+    public CartRow add(String dishId, String dish, String stem, int unit, int qty) {
+        CartRow row = byKey.get(key(dishId, dish));
+        if (row != null) {
+            if (row.getUnit() != unit) {
+                subtotal.set(subtotal.get() + (unit - row.getUnit()) * row.getQty());
+                row.unitProperty().set(unit);
+            }
+            row.dishProperty().set(dish);
+            row.stemProperty().set(stem);
+            row.qtyProperty().set(Math.min(MAX_QTY, row.getQty() + qty));
+            return row;
+        }
+        row = new CartRow(dishId, dish, stem, unit, Math.min(MAX_QTY, qty));
+        row.setStatus("En attente");
+        attach(row);
+        rows.add(row);
+        return row;
+    }
+
+    public void remove(CartRow row) {
+        if (byKey.get(key(row)) != row) return;
+        detach(row);
+        rows.remove(row);
+    }
+
+    public void clear() {
+        for (CartRow r : rows) {
+            r.qtyProperty().removeListener(qtyListeners.get(r));
+        }
+        qtyListeners.clear();
+        byKey.clear();
+        rows.clear();
+        items.set(0);
+        subtotal.set(0);
+    }
+
+    /**
+     * Update the status of the row for this dish name, if any. Status broadcasts only carry
+     * the name, and this is the fallback when there is no request id to go by, so a scan of
+     * the (short) cart does.
+     */
+    public boolean setStatus(String dish, String status) {
+        for (CartRow r : rows) {
+            if (r.getDish().equals(dish)) {
+                r.setStatus(status);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void attach(CartRow row) {
+        ChangeListener<Number> l = (o, a, b) -> {
+            int d = b.intValue() - a.intValue();
+            items.set(items.get() + d);
+            subtotal.set(subtotal.get() + d * row.getUnit());
+        };
+        row.qtyProperty().addListener(l);
+        qtyListeners.put(row, l);
+        byKey.put(key(row), row);
+        items.set(items.get() + row.getQty());
+        subtotal.set(subtotal.get() + row.getSubtotal());
+    }
+
+    private void detach(CartRow row) {
+        ChangeListener<Number> l = qtyListeners.remove(row);
+        if (l != null) row.qtyProperty().removeListener(l);
+        byKey.remove(key(row));
+        items.set(items.get() - row.getQty());
+        subtotal.set(subtotal.get() - row.getSubtotal());
+    }
+}
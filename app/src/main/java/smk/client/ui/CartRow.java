@@ -7,6 +7,7 @@ import javafx.beans.property.StringProperty;
 
 /** Simple model for a cart item. */
 public class CartRow {
+    private final String dishId; // catalog id sent on the wire, null if unknown
     private final StringProperty dish = new SimpleStringProperty();
     private final StringProperty stem = new SimpleStringProperty();
     private final IntegerProperty unit = new SimpleIntegerProperty();
@@ -14,12 +15,19 @@ public class CartRow {
     private final StringProperty status = new SimpleStringProperty("");
 
     public CartRow(String dish, String stem, int unit, int qty) {
+        this(null, dish, stem, unit, qty);
+    }
+
+    public CartRow(String dishId, String dish, String stem, int unit, int qty) {
+        this.dishId = dishId;
         this.dish.set(dish);
         this.stem.set(stem);
         this.unit.set(unit);
         this.qty.set(qty);
     }
 
+    public String getDishId() { return dishId; }
+
     public String getDish() { return dish.get(); }
     public StringProperty dishProperty() { return dish; }
 
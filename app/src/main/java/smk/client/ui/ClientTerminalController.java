@@ -1,8 +1,6 @@
 package smk.client.ui;
 
-import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
-import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
@@ -14,18 +12,26 @@ import javafx.scene.text.Text;
 import javafx.animation.PauseTransition;
 import javafx.util.Duration;
 
+import smk.shared.Dish;
 import smk.shared.LamportClock;
+import smk.shared.MenuCatalog;
 import smk.client.ClientSocketService;
 import smk.shared.Message;
+import smk.shared.OrderPriority;
 
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class ClientTerminalController {
 
     // Header
     @FXML private TextField tfClient;
+    @FXML private CheckBox cbRush;
     @FXML private TextField tfSearch;
     @FXML private Label lblClock;
 
@@ -34,6 +40,7 @@ public class ClientTerminalController {
 
     // Menu
     @FXML private FlowPane menuFlow;
+    @FXML private ScrollPane menuScroll;
     @FXML private Label lblCount;
 
     // Cart summary
@@ -44,17 +51,23 @@ public class ClientTerminalController {
     @FXML private TextArea txtLogs;
 
     // Data
-    private final ObservableList<CartRow> cart = FXCollections.observableArrayList();
-    private final List<MenuItem> allMenu = new ArrayList<>();
+    private final CartModel cart = new CartModel();
+    // request id -> cart row, for orders acked by the server (FX thread only)
+    private final Map<Long, CartRow> inFlight = new HashMap<>();
+    private MenuCatalog catalog;
     private final LamportClock clock = new LamportClock();
+    private final ImageCache images = new ImageCache();
+    private MenuView<Dish> menuView;
     private ClientSocketService net;
+    private static final java.time.format.DateTimeFormatter ETA_FMT =
+            java.time.format.DateTimeFormatter.ofPattern("HH:mm").withZone(java.time.ZoneId.systemDefault());
 
     // --- lifecycle ----------------------------------------------------------
 
     @FXML
     private void initialize() {
         // Cart list as cards
-        cartList.setItems(cart);
+        cartList.setItems(cart.getRows());
         cartList.setCellFactory(lv -> new CartCell());
 
         // Default client name if empty
@@ -62,12 +75,13 @@ public class ClientTerminalController {
             tfClient.setText("client-1");
         }
 
-        // Totals auto-update
-        cart.addListener((ListChangeListener<CartRow>) c -> updateTotals());
+        // Totals auto-update (the model keeps running sums; we only repaint labels)
+        cart.subtotalProperty().addListener((o, a, b) -> updateTotals());
+        cart.itemsProperty().addListener((o, a, b) -> updateTotals());
 
-        // Build menu tiles (replace with your own data if needed)
-        seedMenuIfEmpty();
-        renderMenu();
+        // Build menu tiles from the catalog (SMK_MENU_FILE or the bundled one)
+        menuView = new MenuView<>(menuFlow, menuScroll, Dish::getId, this::buildMenuCard, 60);
+        loadCatalog();
 
         // Filters → apply
         tgAll.setOnAction(e -> applyFilters());
@@ -90,7 +104,7 @@ btnClearSearch.setOnAction(e -> {
 
         log("[UI] Client UI ready.");
         updateTotals();
-        cart.addListener((ListChangeListener<CartRow>) c -> updateCtas());
+        cart.getRows().addListener((ListChangeListener<CartRow>) c -> updateCtas());
 updateCtas(); // run once
 
         // Start socket client to talk to server
@@ -111,11 +125,16 @@ updateCtas(); // run once
                 javafx.application.Platform.runLater(() -> {
                     refreshClock();
                     if (m.getType() == Message.MessageType.START) {
-                        updateStatus(m.getDish(), "En préparation");
+                        updateStatus(m, "En préparation");
                         log("[INFO] " + m.getDish() + " est en préparation.");
                     } else if (m.getType() == Message.MessageType.DONE) {
-                        updateStatus(m.getDish(), "En livraison");
+                        updateStatus(m, "En livraison");
                         log("[INFO] " + m.getDish() + " est en cours de livraison.");
+                    } else if (m.getType() == Message.MessageType.ETA) {
+                        if (!tfClient.getText().trim().equals(m.getClient())) return; // someone else's order
+                        String eta = ETA_FMT.format(java.time.Instant.ofEpochMilli(m.getEtaMs()));
+                        updateStatus(m, ("en preparation".equals(m.getText()) ? "En préparation" : "En file")
+                                + " · prêt ~" + eta);
                     } else {
                         log("[NET] " + m.toJson());
                     }
@@ -126,6 +145,7 @@ updateCtas(); // run once
                 javafx.application.Platform.runLater(() -> log(msg));
             }
         });
+        if (catalog.current() != null) net.setMenuVersion(catalog.current().getVersion());
         net.connect();
         refreshClock();
         
@@ -143,18 +163,29 @@ updateCtas(); // run once
 
         if (net == null) { log("[SEND] not connected"); return; }
 
-        // send one message per cart item (simple demo)
-        for (CartRow r : cart) {
-            net.sendOrder(client, r.getDish());
+        // send one message per cart item; each READY is matched to its row by request id
+        OrderPriority prio = cbRush != null && cbRush.isSelected() ? OrderPriority.RUSH : OrderPriority.NORMAL;
+        List<CompletableFuture<Message>> acks = new ArrayList<>(cart.size());
+        for (CartRow r : cart.getRows()) {
+            acks.add(net.sendOrder(client, r.getDish(), r.getDishId(), prio).whenComplete((ready, err) -> {
+                if (ready != null) javafx.application.Platform.runLater(() -> {
+                    inFlight.put(ready.getRequestId(), r);
+                    r.setStatus("En file (L=" + ready.getLamport() + ")");
+                });
+            }));
         }
         refreshClock();
-        log("Sent " + cart.size() + " items for " + client);
+        int n = cart.size();
+        log("Sent " + n + " items for " + client + (prio != OrderPriority.NORMAL ? " [" + prio + "]" : ""));
+        // ack stats only mean something once this batch's READYs are in
+        CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0])).thenRun(() ->
+                javafx.application.Platform.runLater(() -> log("Acked " + n + " items (ack avg "
+                        + net.getAvgAckMicros() + "us, max " + net.getMaxAckMicros() + "us)")));
     }
 
     @FXML
     private void onClearCart() {
         cart.clear();
-        updateTotals();
     }
 
     @FXML
@@ -195,14 +226,27 @@ private void updateCtas() {
 
     // --- Menu rendering / filtering ----------------------------------------
 
-    private void seedMenuIfEmpty() {
-        if (!allMenu.isEmpty()) return;
-        allMenu.add(new MenuItem("Pizza", "pizza", 18, true, false));
-        allMenu.add(new MenuItem("Burger", "burger", 12, false, true));
-        allMenu.add(new MenuItem("Pasta", "pasta", 14, false, true));
-        allMenu.add(new MenuItem("Salad", "salad", 10, true, false));
-        allMenu.add(new MenuItem("Steak", "steak", 28, false, false));
-        allMenu.add(new MenuItem("Sushi", "sushi", 24, false, true));
+    private void loadCatalog() {
+        catalog = MenuCatalog.fromEnvironment(new MenuCatalog.Listener() {
+            @Override
+            public void onCatalog(MenuCatalog.Snapshot snapshot) {
+                // first load happens on the FX thread, reloads come from the watcher
+                if (javafx.application.Platform.isFxApplicationThread()) applyCatalog(snapshot);
+                else javafx.application.Platform.runLater(() -> applyCatalog(snapshot));
+            }
+            @Override
+            public void onLog(String msg) {
+                javafx.application.Platform.runLater(() -> log(msg));
+            }
+        });
+        catalog.load();
+        catalog.watch();
+    }
+
+    private void applyCatalog(MenuCatalog.Snapshot snapshot) {
+        if (net != null) net.setMenuVersion(snapshot.getVersion());
+        menuView.setItems(snapshot.getDishes(), Dish::getName, Dish::tags);
+        renderMenu();
     }
 
     private void applyFilters() {
@@ -210,32 +254,21 @@ private void updateCtas() {
     }
 
     private void renderMenu() {
-        menuFlow.getChildren().clear();
-
-        String q = tfSearch.getText() == null ? "" : tfSearch.getText().trim().toLowerCase();
         boolean wantVegan   = tgVegan.isSelected();
         boolean wantPopular = tgPopular.isSelected();
         boolean wantAll     = tgAll.isSelected() || (!wantVegan && !wantPopular);
 
-        List<MenuItem> filtered = new ArrayList<>();
-        for (MenuItem m : allMenu) {
-            boolean matchText = q.isEmpty() || m.name.toLowerCase().contains(q);
-            boolean matchTag =
-                    wantAll ||
-                    (wantVegan && m.vegan) ||
-                    (wantPopular && m.popular);
-
-            if (matchText && matchTag) filtered.add(m);
+        Set<String> tags = new HashSet<>();
+        if (!wantAll) {
+            if (wantVegan)   tags.add(Dish.TAG_VEGAN);
+            if (wantPopular) tags.add(Dish.TAG_POPULAR);
         }
 
-        lblCount.setText(filtered.size() + " items");
-
-        for (MenuItem m : filtered) {
-            menuFlow.getChildren().add(buildMenuCard(m));
-        }
+        int count = menuView.filter(tfSearch.getText(), tags);
+        lblCount.setText(count + " items");
     }
 
-    private Node buildMenuCard(MenuItem m) {
+    private Node buildMenuCard(Dish m) {
     // ----- Card root -----
     VBox card = new VBox(10);
     card.getStyleClass().add("menu-card");
@@ -244,16 +277,13 @@ private void updateCtas() {
     // ----- Image + overlays -----
     ImageView iv = new ImageView();
     iv.setFitWidth(240); iv.setFitHeight(140); iv.setPreserveRatio(true);
-    InputStream is = tryLoadImage("/img/" + m.stem + ".png",
-                                  "/img/" + m.stem + ".jpg",
-                                  "/img/" + m.stem + ".jpeg");
-    if (is != null) iv.setImage(new Image(is));
+    images.bind(iv, m.getStem(), 240, 140);
 
     StackPane imgWrap = new StackPane(iv);
     imgWrap.getStyleClass().add("menu-thumb");
 
     // price badge (overlay bottom-right)
-    Label priceBadge = new Label("$" + m.price);
+    Label priceBadge = new Label("$" + m.getPrice());
     priceBadge.getStyleClass().add("price-badge");
     StackPane.setAlignment(priceBadge, javafx.geometry.Pos.BOTTOM_RIGHT);
     StackPane.setMargin(priceBadge, new Insets(0, 8, 8, 0));
@@ -262,8 +292,8 @@ private void updateCtas() {
     ToggleButton favBtn = new ToggleButton();
     favBtn.getStyleClass().addAll("icon-btn", "fav-btn");
     // icon (png) or fallback "❤"
-    Node heartOn  = iconOrText("/img/icons/heart_fill.png", 18, "❤");
-    Node heartOff = iconOrText("/img/icons/heart.png",      18, "♡");
+    Node heartOn  = iconOrText("icons/heart_fill", 18, "❤");
+    Node heartOff = iconOrText("icons/heart",      18, "♡");
     favBtn.setGraphic(heartOff);
     favBtn.selectedProperty().addListener((o, a, b) ->
             favBtn.setGraphic(b ? heartOn : heartOff));
@@ -275,7 +305,7 @@ private void updateCtas() {
 
     // ----- Title row -----
     HBox titleRow = new HBox(8);
-    Label name = new Label(m.name);
+    Label name = new Label(m.getName());
     name.getStyleClass().add("menu-title");
     Region grow = new Region(); HBox.setHgrow(grow, Priority.ALWAYS);
     // optional rating stars (static for demo)
@@ -285,15 +315,15 @@ private void updateCtas() {
 
     // ----- Tags row -----
     FlowPane tags = new FlowPane(6, 6);
-    if (m.vegan)   tags.getChildren().add(chip("Vegan"));
-    if (m.popular) tags.getChildren().add(chip("Popular"));
+    if (m.isVegan())   tags.getChildren().add(chip("Vegan"));
+    if (m.isPopular()) tags.getChildren().add(chip("Popular"));
 
     // ----- Controls row (glass stepper + Add) -----
     HBox controls = new HBox(10);
     controls.setFillHeight(true);
 
     Button minus = new Button();
-    minus.setGraphic(iconOrText("/img/icons/minus.png", 12, "−"));
+    minus.setGraphic(iconOrText("icons/minus", 12, "−"));
     minus.getStyleClass().add("qty-icon");
 
     Label qtyLabel = new Label("1");
@@ -301,7 +331,7 @@ private void updateCtas() {
     final int[] qty = {1};
 
     Button plus = new Button();
-    plus.setGraphic(iconOrText("/img/icons/plus.png", 12, "+"));
+    plus.setGraphic(iconOrText("icons/plus", 12, "+"));
     plus.getStyleClass().add("qty-icon");
 
     minus.setOnAction(e -> { qty[0] = Math.max(1, qty[0]-1); qtyLabel.setText(String.valueOf(qty[0])); });
@@ -313,11 +343,11 @@ private void updateCtas() {
     Region grow2 = new Region(); HBox.setHgrow(grow2, Priority.ALWAYS);
 
     Button add = new Button("Add");
-    add.setGraphic(iconOrText("/img/icons/cart.png", 16, "🛒"));
+    add.setGraphic(iconOrText("icons/cart", 16, "🛒"));
     add.getStyleClass().add("add-pill");
     add.setOnAction(e -> {
-        addToCart(m.name, m.stem, m.price, qty[0]);
-        log("ADD -> " + m.name + " x" + qty[0]);
+        addToCart(m.getId(), m.getName(), m.getStem(), m.getPrice(), qty[0]);
+        log("ADD -> " + m.getName() + " x" + qty[0]);
     });
 
     controls.getChildren().addAll(stepper, grow2, add);
@@ -335,39 +365,25 @@ private void updateCtas() {
         l.getStyleClass().add("tag-chip");
         return l;
     }
-    private Node iconOrText(String path, double size, String fallbackText) {
-    ImageView iv = null;
-    try (InputStream is = getClass().getResourceAsStream(path)) {
-        if (is != null) {
-            iv = new ImageView(new Image(is));
-            iv.setFitWidth(size); iv.setFitHeight(size); iv.setPreserveRatio(true);
-        }
-    } catch (Exception ignored) {}
-    return iv != null ? iv : new Label(fallbackText);
+    private Node iconOrText(String stem, double size, String fallbackText) {
+    Image img = images.get(stem, size, size);
+    if (img == null) return new Label(fallbackText);
+    ImageView iv = new ImageView(img);
+    iv.setFitWidth(size); iv.setFitHeight(size); iv.setPreserveRatio(true);
+    return iv;
 }
 
 
     // --- Cart helpers -------------------------------------------------------
 
-    private void addToCart(String dish, String stem, int unit, int qty) {
-        // merge if same dish
-        for (CartRow r : cart) {
-            if (r.getDish().equals(dish)) {
-                r.qtyProperty().set(Math.min(20, r.getQty() + qty));
-                updateTotals();
-                cartList.refresh();
-                return;
-            }
-        }
-        CartRow row = new CartRow(dish, stem, unit, qty);
-        row.setStatus("En attente");
-        cart.add(row);
-        updateTotals();
+    private void addToCart(String dishId, String dish, String stem, int unit, int qty) {
+        // merges into the existing row; totals and the row's cell update via listeners
+        cart.add(dishId, dish, stem, unit, qty);
     }
 
     private void updateTotals() {
-        int items = cart.stream().mapToInt(CartRow::getQty).sum();
-        int subtotal = cart.stream().mapToInt(CartRow::getSubtotal).sum();
+        int items = cart.getItems();
+        int subtotal = cart.getSubtotal();
         int tax = (int) Math.round(subtotal * 0.10);
         int total = subtotal + tax;
 
@@ -387,14 +403,23 @@ private void updateCtas() {
         }
     }
 
-    private void updateStatus(String dish, String status) {
-        for (CartRow r : cart) {
-            if (r.getDish().equals(dish)) {
-                r.setStatus(status);
-                cartList.refresh();
-                break;
+    private void updateStatus(Message m, String status) {
+        if (m.getRequestId() != 0) {
+            // broadcasts reach every terminal; request ids are only unique per session.
+            // Servers that don't echo the session leave only the client name to go by.
+            boolean mine = m.getSession() != null
+                    ? net != null && m.getSession().equals(net.getSession())
+                    : m.getClient().equals(tfClient.getText().trim());
+            if (!mine) return;
+            CartRow row = m.getType() == Message.MessageType.DONE
+                    ? inFlight.remove(m.getRequestId())
+                    : inFlight.get(m.getRequestId());
+            if (row != null) {
+                row.setStatus(status);
+                return;
             }
         }
+        cart.setStatus(m.getDish(), status);
     }
 
     private String resolveHost() {
@@ -419,31 +444,6 @@ private void updateCtas() {
         if (lblClock != null) lblClock.setText(String.valueOf(clock.now()));
     }
 
-    /** Try multiple resource paths, return the first existing stream. */
-    private InputStream tryLoadImage(String... candidates) {
-        for (String c : candidates) {
-            InputStream is = getClass().getResourceAsStream(c);
-            if (is != null) return is;
-        }
-        return null;
-    }
-
-    // --- Small menu item struct --------------------------------------------
-
-    private static class MenuItem {
-        final String name, stem; // stem = filename stem under /img
-        final int price;
-        final boolean vegan, popular;
-
-        MenuItem(String name, String stem, int price, boolean vegan, boolean popular) {
-            this.name = name;
-            this.stem = stem;
-            this.price = price;
-            this.vegan = vegan;
-            this.popular = popular;
-        }
-    }
-
     // --- Custom ListCell for cart rows -------------------------------------
 
     private class CartCell extends ListCell<CartRow> {
@@ -486,19 +486,14 @@ private void updateCtas() {
             minus.setOnAction(e -> {
                 CartRow r = getItem(); if (r == null) return;
                 if (r.getQty() > 1) r.qtyProperty().set(r.getQty() - 1);
-                refreshRow(r);
-                updateTotals();
             });
             plus.setOnAction(e -> {
                 CartRow r = getItem(); if (r == null) return;
-                r.qtyProperty().set(Math.min(20, r.getQty() + 1));
-                refreshRow(r);
-                updateTotals();
+                r.qtyProperty().set(Math.min(CartModel.MAX_QTY, r.getQty() + 1));
             });
             remove.setOnAction(e -> {
                 CartRow r = getItem(); if (r != null) {
                     cart.remove(r);
-                    updateTotals();
                 }
             });
         }
@@ -508,10 +503,7 @@ private void updateCtas() {
             super.updateItem(r, empty);
             if (empty || r == null) { setGraphic(null); return; }
 
-            InputStream is = tryLoadImage("/img/" + r.getStem() + ".png",
-                                          "/img/" + r.getStem() + ".jpg",
-                                          "/img/" + r.getStem() + ".jpeg");
-            if (is != null) thumb.setImage(new Image(is));
+            images.bind(thumb, r.getStem(), 56, 42);
 
             name.setText(r.getDish());
             refreshRow(r);
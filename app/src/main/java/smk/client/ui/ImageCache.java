@@ -0,0 +1,179 @@
+package smk.client.ui;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thumbnail cache for menu/cart images.
+ * Images are decoded in the background by JavaFX at the requested size
+ * (not full resolution), kept in an LRU bounded by an estimated pixel budget,
+ * and a flat placeholder is shown until the real pixels arrive.
+ */
+public class ImageCache {
+
+    private static final String[] EXTENSIONS = { ".png", ".jpg", ".jpeg" };
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    // ImageView property key: the Waiting listener the view has on a loading image
+    private static final Object WAITING = new Object();
+
+    /**
+     * Swaps a view to its image once loaded; at most one per view, removed when done or rebound.
+     * A failed load keeps the placeholder and leaves the cache, so the next bind tries again.
+     */
+    private final class Waiting implements ChangeListener<Number> {
+        final ImageView view;
+        final String key;
+        final Image img;
+
+        Waiting(ImageView view, String key, Image img) {
+            this.view = view;
+            this.key = key;
+            this.img = img;
+        }
+
+        @Override
+        public void changed(ObservableValue<? extends Number> o, Number a, Number b) {
+            if (b.doubleValue() < 1.0) return;
+            img.progressProperty().removeListener(this);
+            view.getProperties().remove(WAITING, this);
+            if (img.isError()) forget(key, img);
+            else view.setImage(img);
+        }
+    }
+
+    private final long maxBytes;
+    private long usedBytes = 0;
+
+    // access-ordered => iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Image> lru = new LinkedHashMap<>(64, 0.75f, true);
+    // stem -> resolved resource URL ("" when nothing exists, so we don't probe again)
+    private final Map<String, String> resolved = new HashMap<>();
+    private final Map<String, Image> placeholders = new HashMap<>();
+
+    public ImageCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Thumbnail for /img/&lt;stem&gt;.{png,jpg,jpeg} decoded at (w, h), or null if no such resource.
+     * The returned image may still be loading; see {@link #bind}.
+     */
+    public synchronized Image get(String stem, double w, double h) {
+        String url = resolve(stem);
+        if (url == null) return null;
+        String key = key(stem, w, h);
+        Image img = lru.get(key);
+        if (img == null) {
+            img = new Image(url, w, h, true, true, true);
+            lru.put(key, img);
+            usedBytes += estimate(w, h);
+            evict();
+        }
+        return img;
+    }
+
+    /** Set the view to the cached thumbnail, showing a placeholder until loading completes. */
+    public void bind(ImageView view, String stem, double w, double h) {
+        Image img = get(stem, w, h);
+        Object prev = view.getProperties().remove(WAITING);
+        if (prev instanceof Waiting p) p.img.progressProperty().removeListener(p);
+        if (img == null) {
+            view.setImage(placeholder(w, h));
+            return;
+        }
+        String key = key(stem, w, h);
+        if (img.isError()) {
+            // failed already (possibly while another view waited on it): drop it so a
+            // later bind reloads, and don't wait on an image that will never finish
+            forget(key, img);
+            view.setImage(placeholder(w, h));
+            return;
+        }
+        if (view.getImage() == img) return;
+        if (img.getProgress() >= 1.0) {
+            view.setImage(img);
+            return;
+        }
+        view.setImage(placeholder(w, h));
+        // a view rebound while loading (recycled cell) drops its old listener above, so a
+        // slow image never collects one per rebind nor swaps in the wrong picture
+        Waiting wait = new Waiting(view, key, img);
+        view.getProperties().put(WAITING, wait);
+        img.progressProperty().addListener(wait);
+    }
+
+    public synchronized void clear() {
+        lru.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getUsedBytes() { return usedBytes; }
+
+    private static String key(String stem, double w, double h) {
+        return stem + '@' + (int) w + 'x' + (int) h;
+    }
+
+    /** Remove a failed entry, unless it was already replaced by a newer load. */
+    private synchronized void forget(String key, Image img) {
+        if (lru.remove(key, img)) {
+            usedBytes -= estimate(img.getRequestedWidth(), img.getRequestedHeight());
+        }
+    }
+
+    private String resolve(String stem) {
+        String url = resolved.get(stem);
+        if (url == null) {
+            url = "";
+            for (String ext : EXTENSIONS) {
+                URL u = getClass().getResource("/img/" + stem + ext);
+                if (u != null) { url = u.toExternalForm(); break; }
+            }
+            resolved.put(stem, url);
+        }
+        return url.isEmpty() ? null : url;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Image>> it = lru.entrySet().iterator();
+        while (usedBytes > maxBytes && lru.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Image> e = it.next();
+            Image img = e.getValue();
+            usedBytes -= estimate(img.getRequestedWidth(), img.getRequestedHeight());
+            it.remove();
+        }
+    }
+
+    private synchronized Image placeholder(double w, double h) {
+        String key = (int) w + "x" + (int) h;
+        return placeholders.computeIfAbsent(key, k -> {
+            int pw = Math.max(1, (int) w), ph = Math.max(1, (int) h);
+            WritableImage wi = new WritableImage(pw, ph);
+            PixelWriter px = wi.getPixelWriter();
+            Color c = Color.rgb(230, 230, 235);
+            for (int y = 0; y < ph; y++) {
+                for (int x = 0; x < pw; x++) px.setColor(x, y, c);
+            }
+            return wi;
+        });
+    }
+
+    // ARGB bytes at the requested size; good enough as a budget estimate
+    private static long estimate(double w, double h) {
+        return (long) Math.max(1, w) * (long) Math.max(1, h) * 4L;
+    }
+}
@@ -0,0 +1,155 @@
+package smk.client.ui;
+
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.FlowPane;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Menu grid that builds each card once and only changes which cards are attached.
+ * Filtering runs against a precomputed index (lower-cased names + one BitSet per tag),
+ * and only a page of matching cards is attached at a time; more pages are appended
+ * as the user scrolls to the bottom, or while the cards shown don't fill the viewport
+ * yet, so large catalogs don't create thousands of nodes.
+ */
+public class MenuView<T> {
+
+    private final FlowPane pane;
+    private final ScrollPane scroller;
+    private final Function<T, String> key;
+    private final Function<T, Node> cardFactory;
+    private final int pageSize;
+
+    // index
+    private final List<T> items = new ArrayList<>();
+    private String[] names = new String[0];
+    private final Map<String, BitSet> tagIndex = new HashMap<>();
+
+    // cards built so far, keyed by dish key, and the item each one was built from
+    private final Map<String, Node> cards = new HashMap<>();
+    private final Map<String, T> builtFrom = new HashMap<>();
+
+    // last filter result, reused when the query only gets longer
+    private String lastQuery = null;
+    private Set<String> lastTags = null;
+    private BitSet matches = new BitSet();
+    private int shown = 0;
+
+    public MenuView(FlowPane pane, ScrollPane scroller, Function<T, String> key,
+                    Function<T, Node> cardFactory, int pageSize) {
+        this.pane = pane;
+        this.scroller = scroller;
+        this.key = key;
+        this.cardFactory = cardFactory;
+        this.pageSize = pageSize;
+        if (scroller != null) {
+            scroller.vvalueProperty().addListener((o, a, b) -> {
+                if (b.doubleValue() >= scroller.getVmax() * 0.9) showMore();
+            });
+            // no scrollbar yet means no scrolling: keep adding pages until the cards overflow
+            pane.heightProperty().addListener((o, a, b) -> fillViewport());
+            scroller.viewportBoundsProperty().addListener((o, a, b) -> fillViewport());
+        }
+    }
+
+    /**
+     * Replace the items and rebuild the index. Cards whose item is unchanged (same key and
+     * {@code equals}) are kept; others are dropped and rebuilt on demand, so a reload that
+     * changes a price or name never shows, or orders through, the old card.
+     */
+    public void setItems(Collection<T> newItems, Function<T, String> text,
+                         Function<T, ? extends Collection<String>> tags) {
+        items.clear();
+        items.addAll(newItems);
+        names = new String[items.size()];
+        tagIndex.clear();
+        Map<String, Node> keep = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            T it = items.get(i);
+            names[i] = text.apply(it).toLowerCase();
+            for (String tag : tags.apply(it)) {
+                tagIndex.computeIfAbsent(tag, t -> new BitSet()).set(i);
+            }
+            String k = key.apply(it);
+            Node card = cards.get(k);
+            if (card != null && it.equals(builtFrom.get(k))) keep.put(k, card);
+        }
+        cards.clear();
+        cards.putAll(keep);
+        builtFrom.keySet().retainAll(keep.keySet());
+        lastQuery = null;
+        lastTags = null;
+    }
+
+    /**
+     * Show items whose name contains {@code query} and that carry any of {@code tags}
+     * (empty = no tag filter). Returns the number of matches.
+     */
+    public int filter(String query, Set<String> tags) {
+        String q = query == null ? "" : query.trim().toLowerCase();
+        BitSet next;
+        if (lastQuery != null && tags.equals(lastTags) && q.startsWith(lastQuery)) {
+            // narrowing search: only re-check what matched before
+            next = (BitSet) matches.clone();
+        } else if (tags.isEmpty()) {
+            next = new BitSet(items.size());
+            next.set(0, items.size());
+        } else {
+            next = new BitSet(items.size());
+            for (String t : tags) {
+                BitSet b = tagIndex.get(t);
+                if (b != null) next.or(b);
+            }
+        }
+        if (!q.isEmpty()) {
+            for (int i = next.nextSetBit(0); i >= 0; i = next.nextSetBit(i + 1)) {
+                if (!names[i].contains(q)) next.clear(i);
+            }
+        }
+        lastQuery = q;
+        lastTags = Set.copyOf(tags);
+        matches = next;
+        shown = Math.min(pageSize, matches.cardinality());
+        attach();
+        return matches.cardinality();
+    }
+
+    private void fillViewport() {
+        if (pane.getHeight() <= scroller.getViewportBounds().getHeight()) showMore();
+    }
+
+    private void showMore() {
+        int total = matches.cardinality();
+        if (shown >= total) return;
+        shown = Math.min(total, shown + pageSize);
+        attach();
+    }
+
+    /** Attach the first {@code shown} matching cards, touching the scene graph only if it differs. */
+    private void attach() {
+        List<Node> wanted = new ArrayList<>(shown);
+        for (int i = matches.nextSetBit(0); i >= 0 && wanted.size() < shown; i = matches.nextSetBit(i + 1)) {
+            T it = items.get(i);
+            wanted.add(cards.computeIfAbsent(key.apply(it), k -> {
+                builtFrom.put(k, it);
+                return cardFactory.apply(it);
+            }));
+        }
+        ObservableList<Node> current = pane.getChildren();
+        if (current.equals(wanted)) return;
+        if (wanted.size() > current.size() && current.equals(wanted.subList(0, current.size()))) {
+            current.addAll(wanted.subList(current.size(), wanted.size()));
+        } else {
+            current.setAll(wanted);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package smk.server;
+
+import smk.shared.Settings;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether an incoming ORDER may enter the kitchen queue.
+ * Each client has a token bucket (sustained rate + burst) and the whole server has
+ * a cap on orders admitted but not yet finished. Rejected orders get a retry-after hint.
+ *
+ * At most MAX_TRACKED_CLIENTS buckets are kept. Beyond that, buckets that have refilled
+ * (idle clients, indistinguishable from a new bucket) are swept out; clients that still
+ * don't fit share one overflow bucket, so a flood of made-up names can neither reset the
+ * limits of real clients nor get a full burst each.
+ */
+public class AdmissionController {
+
+    /** Result of {@link #tryAdmit}: admitted, or rejected with a retry-after in ms. */
+    public static final class Decision {
+        static final Decision OK = new Decision(true, 0, null);
+        public final boolean admitted;
+        public final int retryAfterMs;
+        public final String reason;
+
+        Decision(boolean admitted, int retryAfterMs, String reason) {
+            this.admitted = admitted;
+            this.retryAfterMs = retryAfterMs;
+            this.reason = reason;
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long lastNanos;
+
+        Bucket(double burst, long now) {
+            this.tokens = burst;
+            this.lastNanos = now;
+        }
+
+        /** Take one token; returns 0 on success, or ms until a token is available. */
+        synchronized int take(long now, double ratePerSec, double burst) {
+            tokens = Math.min(burst, tokens + (now - lastNanos) * ratePerSec / 1e9);
+            lastNanos = now;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return 0;
+            }
+            return (int) Math.ceil((1.0 - tokens) * 1000.0 / ratePerSec);
+        }
+
+        /** True if the bucket has refilled, i.e. dropping it loses nothing. */
+        synchronized boolean full(long now, double ratePerSec, double burst) {
+            return tokens + (now - lastNanos) * ratePerSec / 1e9 >= burst;
+        }
+    }
+
+    static final int MAX_TRACKED_CLIENTS = 10_000;
+    static final long SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+    // queue-full retry-after; jittered +/-50% so rejected clients don't all come back at once
+    private static final int QUEUE_FULL_RETRY_MS = 1000;
+
+    private final double ratePerClient;
+    private final double burstPerClient;
+    private final int maxQueueDepth;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket overflow;
+    private final AtomicLong lastSweepNanos;
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private long lastSampleNanos;
+    private long lastAccepted, lastRejected;
+    private volatile double acceptedPerSec, rejectedPerSec;
+
+    public AdmissionController(double ratePerClient, double burstPerClient, int maxQueueDepth) {
+        this(ratePerClient, burstPerClient, maxQueueDepth, System::nanoTime);
+    }
+
+    /** With the time source for refills and rates, in nanoseconds; tests pass a fake one. */
+    AdmissionController(double ratePerClient, double burstPerClient, int maxQueueDepth, LongSupplier nanoClock) {
+        this.ratePerClient = ratePerClient;
+        this.burstPerClient = burstPerClient;
+        this.maxQueueDepth = maxQueueDepth;
+        this.nanoClock = nanoClock;
+        this.lastSampleNanos = nanoClock.getAsLong();
+        this.lastSweepNanos = new AtomicLong(lastSampleNanos);
+        this.overflow = new Bucket(burstPerClient, lastSampleNanos);
+    }
+
+    /**
+     * Limits from SMK_RATE_PER_CLIENT (orders/s), SMK_BURST_PER_CLIENT and SMK_MAX_QUEUE
+     * (system property or env); defaults 20/s, burst 40, 500 queued.
+     */
+    public static AdmissionController fromEnvironment() {
+        return new AdmissionController(
+                Settings.get("SMK_RATE_PER_CLIENT", 20),
+                Settings.get("SMK_BURST_PER_CLIENT", 40),
+                (int) Settings.get("SMK_MAX_QUEUE", 500));
+    }
+
+    public Decision tryAdmit(String client) {
+        if (depth.get() >= maxQueueDepth) {
+            rejected.increment();
+            return new Decision(false, queueFullRetryMs(), "queue full");
+        }
+        long now = nanoClock.getAsLong();
+        Bucket b = bucketFor(client == null ? "" : client, now);
+        int wait = b.take(now, ratePerClient, burstPerClient);
+        if (wait > 0) {
+            rejected.increment();
+            return new Decision(false, wait, "rate limit");
+        }
+        // re-check after taking the token; another thread may have filled the last slot
+        if (depth.incrementAndGet() > maxQueueDepth) {
+            depth.decrementAndGet();
+            rejected.increment();
+            return new Decision(false, queueFullRetryMs(), "queue full");
+        }
+        accepted.increment();
+        return Decision.OK;
+    }
+
+    private Bucket bucketFor(String client, long now) {
+        Bucket b = buckets.get(client);
+        if (b != null) return b;
+        if (buckets.size() >= MAX_TRACKED_CLIENTS) {
+            sweep(now);
+            if (buckets.size() >= MAX_TRACKED_CLIENTS) return overflow;
+        }
+        return buckets.computeIfAbsent(client, k -> new Bucket(burstPerClient, now));
+    }
+
+    /** Drop refilled buckets; at most once per interval, by whichever thread gets there first. */
+    private void sweep(long now) {
+        long last = lastSweepNanos.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweepNanos.compareAndSet(last, now)) return;
+        buckets.forEach((k, b) -> {
+            if (b.full(now, ratePerClient, burstPerClient)) buckets.remove(k, b);
+        });
+    }
+
+    private static int queueFullRetryMs() {
+        return QUEUE_FULL_RETRY_MS / 2 + ThreadLocalRandom.current().nextInt(QUEUE_FULL_RETRY_MS + 1);
+    }
+
+    /** An admitted order left the queue (done, or rejected downstream). */
+    public void release() {
+        depth.updateAndGet(d -> Math.max(0, d - 1));
+    }
+
+    /** The queue was cleared or rebuilt; resync the depth. */
+    public void resetDepth(int queued) {
+        depth.set(Math.max(0, queued));
+    }
+
+    public int getDepth() { return depth.get(); }
+    public int getMaxQueueDepth() { return maxQueueDepth; }
+    public long getAcceptedTotal() { return accepted.sum(); }
+    public long getRejectedTotal() { return rejected.sum(); }
+
+    /** Recompute the per-second rates; call periodically (e.g. from the 1s stats ticker). */
+    public synchronized void sampleRates() {
+        long now = nanoClock.getAsLong();
+        double secs = (now - lastSampleNanos) / 1e9;
+        if (secs <= 0) return;
+        long a = accepted.sum(), r = rejected.sum();
+        acceptedPerSec = (a - lastAccepted) / secs;
+        rejectedPerSec = (r - lastRejected) / secs;
+        lastAccepted = a;
+        lastRejected = r;
+        lastSampleNanos = now;
+    }
+
+    public double getAcceptedPerSec() { return acceptedPerSec; }
+    public double getRejectedPerSec() { return rejectedPerSec; }
+}
@@ -0,0 +1,214 @@
+package smk.server;
+
+import smk.shared.Metrics;
+import smk.shared.OrderRow;
+import smk.shared.Settings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulated kitchen: K chefs that START the next waiting order, "cook" it for a time drawn
+ * from the dish's cook-time distribution, then DONE it, with nobody at the keyboard.
+ * Together with client load (see smk.client.LoadGenerator) this measures saturation
+ * throughput and queue growth of the whole system.
+ *
+ * Chefs are timers on one scheduler thread; every queue operation is handed to the
+ * kitchen's own executor (the FX thread for the dashboard), so the queue stays confined.
+ *
+ * Settings: SMK_SIM_CHEFS (K, default 2), SMK_SIM_SPEED (simulated seconds per real
+ * second, default 1), SMK_SIM_SEED, and SMK_SIM_COOK with per-dish distributions in
+ * seconds, e.g. {@code pizza=lognormal:480:0.25;salad=uniform:60:120;*=exp:300}.
+ * Kinds: fixed:s, uniform:min:max, exp:mean, normal:mean:sd, lognormal:median:sigma.
+ * Default for dishes not listed: lognormal:90:0.4.
+ */
+public class ChefSimulator implements AutoCloseable {
+
+    /** What the chefs work on. Queue calls arrive on the executor given to the simulator. */
+    public interface Kitchen {
+        /** Start the next waiting order; null if nothing is waiting. */
+        OrderRow startNext();
+
+        void finish(OrderRow order);
+
+        /** Orders admitted and not finished; read from the simulator thread. */
+        int queueDepth();
+
+        void onLog(String msg);
+    }
+
+    /** Per-dish cook-time distributions, in seconds. */
+    public static final class CookTimes {
+        private interface Dist { double sample(Random r); }
+
+        private final Map<String, Dist> byDish = new HashMap<>();
+        private Dist fallback = parseDist("lognormal:90:0.4");
+
+        public static CookTimes parse(String spec) {
+            CookTimes c = new CookTimes();
+            if (spec == null || spec.isBlank()) return c;
+            for (String entry : spec.split("[;,]")) {
+                String[] kv = entry.trim().split("=", 2);
+                if (kv.length != 2) continue;
+                Dist d = parseDist(kv[1].trim());
+                if (d == null) continue;
+                if (kv[0].trim().equals("*")) c.fallback = d;
+                else c.byDish.put(kv[0].trim(), d);
+            }
+            return c;
+        }
+
+        private static Dist parseDist(String s) {
+            String[] f = s.split(":");
+            try {
+                double a = f.length > 1 ? Double.parseDouble(f[1]) : 0;
+                double b = f.length > 2 ? Double.parseDouble(f[2]) : 0;
+                return switch (f[0].toLowerCase()) {
+                    case "fixed" -> r -> a;
+                    case "uniform" -> r -> a + r.nextDouble() * (b - a);
+                    case "exp" -> r -> -a * Math.log(1 - r.nextDouble());
+                    case "normal" -> r -> Math.max(0, a + b * r.nextGaussian());
+                    case "lognormal" -> r -> a * Math.exp(b * r.nextGaussian());
+                    default -> null;
+                };
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public double sampleSeconds(String dish, Random r) {
+            return byDish.getOrDefault(dish, fallback).sample(r);
+        }
+    }
+
+    private static final Metrics.Gauge BUSY = Metrics.gauge("smk_sim_chefs_busy", "Simulated chefs cooking");
+    private static final Metrics.Counter COOKED = Metrics.counter("smk_sim_cooked_total", "Orders cooked by simulated chefs");
+    private static final long IDLE_POLL_MS = 100;
+    private static final long REPORT_EVERY_MS = 10_000;
+
+    private final Kitchen kitchen;
+    private final Executor kitchenThread;
+    private final int chefs;
+    private final double speed;
+    private final CookTimes cookTimes;
+    private final Random rnd;
+    private final LongAdder cooked = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private ScheduledExecutorService timer;
+    private volatile boolean running;
+    private volatile Run run; // current start()..close() span, null while stopped
+    private long lastReportNanos;
+    private long lastCooked, lastBusyNanos;
+
+    /**
+     * One start()..close() span. Cook timers and finish tasks belong to the run that started
+     * them; once it is closed they do nothing, so a late completion can't touch the queue
+     * or the busy count of a later run.
+     */
+    private static final class Run {
+        final AtomicInteger busy = new AtomicInteger();
+    }
+
+    public ChefSimulator(Kitchen kitchen, Executor kitchenThread, int chefs, double speed, CookTimes cookTimes, long seed) {
+        this.kitchen = kitchen;
+        this.kitchenThread = kitchenThread;
+        this.chefs = Math.max(1, chefs);
+        this.speed = speed > 0 ? speed : 1;
+        this.cookTimes = cookTimes;
+        this.rnd = new Random(seed);
+    }
+
+    public static ChefSimulator fromEnvironment(Kitchen kitchen, Executor kitchenThread) {
+        String spec = Settings.get("SMK_SIM_COOK");
+        return new ChefSimulator(kitchen, kitchenThread,
+                (int) Settings.get("SMK_SIM_CHEFS", 2),
+                Settings.get("SMK_SIM_SPEED", 1),
+                CookTimes.parse(spec),
+                (long) Settings.get("SMK_SIM_SEED", System.nanoTime()));
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chef-simulator");
+            t.setDaemon(true);
+            return t;
+        });
+        Run r = new Run();
+        run = r;
+        BUSY.bind(this::busy);
+        lastReportNanos = System.nanoTime();
+        timer.scheduleAtFixedRate(this::report, REPORT_EVERY_MS, REPORT_EVERY_MS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < chefs; i++) timer.execute(() -> nextOrder(r));
+        kitchen.onLog("[SIM] " + chefs + " chefs on, speed x" + speed);
+    }
+
+    /** One chef looks for work: start the next order, or check back shortly. */
+    private void nextOrder(Run r) {
+        if (run != r) return;
+        CompletableFuture.supplyAsync(kitchen::startNext, kitchenThread).whenComplete((order, err) -> {
+            if (run != r) return; // closed meanwhile: the order stays started, see close()
+            if (err != null) kitchen.onLog("[SIM][ERR] " + err.getMessage());
+            if (order == null) {
+                schedule(() -> nextOrder(r), IDLE_POLL_MS);
+                return;
+            }
+            r.busy.incrementAndGet();
+            long cookMs = Math.round(cookTimes.sampleSeconds(order.getDish(), rnd) * 1000 / speed);
+            long began = System.nanoTime();
+            schedule(() -> kitchenThread.execute(() -> {
+                if (run != r) return;
+                kitchen.finish(order);
+                r.busy.decrementAndGet();
+                busyNanos.add(System.nanoTime() - began);
+                cooked.increment();
+                COOKED.inc();
+                schedule(() -> nextOrder(r), 0);
+            }), cookMs);
+        });
+    }
+
+    private long busy() {
+        Run r = run;
+        return r == null ? 0 : r.busy.get();
+    }
+
+    private void schedule(Runnable r, long delayMs) {
+        try { timer.schedule(r, delayMs, TimeUnit.MILLISECONDS); }
+        catch (RejectedExecutionException ignored) { /* stopped */ }
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        long window = now - lastReportNanos;
+        long n = cooked.sum(), b = busyNanos.sum();
+        double perMin = (n - lastCooked) * 60e9 / window;
+        double util = (b - lastBusyNanos) / (double) (window * chefs);
+        lastReportNanos = now;
+        lastCooked = n;
+        lastBusyNanos = b;
+        kitchen.onLog(String.format("[SIM] %.1f done/min, chefs busy %d/%d (util %.0f%%), queue %d",
+                perMin, busy(), chefs, util * 100, kitchen.queueDepth()));
+    }
+
+    public boolean isRunning() { return running; }
+
+    public int getChefs() { return chefs; }
+
+    public long getCooked() { return cooked.sum(); }
+
+    /** Stop the chefs; orders they were cooking stay started and can be ended by hand. */
+    @Override
+    public synchronized void close() {
+        if (!running) return;
+        running = false;
+        run = null;
+        timer.shutdownNow();
+        kitchen.onLog("[SIM] chefs off after " + cooked.sum() + " orders");
+    }
+}
@@ -0,0 +1,358 @@
+package smk.server;
+
+import smk.shared.OrderRow;
+import smk.shared.Settings;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Projects a ready time for every queued order.
+ *
+ * Cook times are learned from START to DONE as exponentially weighted averages
+ * (alpha = SMK_ETA_ALPHA, default 0.2) per dish, per station and overall. A dish with
+ * fewer than MIN_SAMPLES of its own borrows its station's average, then the overall one,
+ * then SMK_ETA_DEFAULT_SEC (default 300).
+ *
+ * The kitchen works the queue head-first, so an order is ready after everything ahead of
+ * it plus itself, minus what the head has already cooked. The queue is mirrored in a treap
+ * in {@link OrderRow} order whose nodes carry their estimate and the sum of their subtree,
+ * so add, remove and one order's ETA (a prefix sum) are O(log n). When an average moves,
+ * only dishes whose estimate actually changed are re-valued, and a large batch of changes
+ * re-sums the tree in one pass instead of one root path per order.
+ *
+ * Pushing: a change to the queue only moves the ETAs from that position on, so
+ * {@link #forEachChanged} walks from the earliest change rather than the whole queue. The
+ * whole queue moves together only with the clock (nothing cooking, or the head running
+ * past its estimate); that triggers a full walk once the shift reaches the threshold.
+ *
+ * Not thread-safe: owned by the thread that owns the queue (the FX thread).
+ */
+public class EtaEstimator {
+
+    static final int MIN_SAMPLES = 3;
+
+    private final Function<String, String> stationOf;
+    private final double alpha = Settings.get("SMK_ETA_ALPHA", 0.2);
+    private final long defaultMs = (long) (Settings.get("SMK_ETA_DEFAULT_SEC", 300) * 1000);
+
+    private static final class Ewma {
+        double value;
+        int samples;
+
+        void add(double x, double alpha) {
+            value = samples == 0 ? x : value + alpha * (x - value);
+            samples++;
+        }
+    }
+
+    private final Map<String, Ewma> byDish = new HashMap<>();
+    private final Map<String, Ewma> byStation = new HashMap<>();
+    private final Ewma overall = new Ewma();
+
+    private static final class Node {
+        final OrderRow row;
+        final int prio;
+        long est;
+        long sum;
+        Node left, right;
+        long lastPushedEta = Long.MIN_VALUE;
+        DishNodes group;
+
+        Node(OrderRow row, int prio, long est) {
+            this.row = row;
+            this.prio = prio;
+            this.est = est;
+            this.sum = est;
+        }
+    }
+
+    /** Queued orders of one dish; they all carry the same estimate. */
+    private static final class DishNodes {
+        long est;
+        final Set<Node> nodes = new HashSet<>();
+
+        DishNodes(long est) { this.est = est; }
+    }
+
+    private final Random rnd = new Random();
+    private Node root;
+    private final Map<OrderRow, Node> nodes = new IdentityHashMap<>();
+    private final Map<String, DishNodes> nodesByDish = new HashMap<>();
+    private OrderRow startedHead;
+    private long headStartedAt;
+    // earliest queue position whose ETA may have moved since the last push; null = none
+    private OrderRow dirtyFrom;
+    // ETA = base + estimates up to and including the order; base at the last full walk
+    private long pushedBase;
+    private boolean basePushed;
+
+    public EtaEstimator(Function<String, String> stationOf) {
+        this.stationOf = stationOf;
+    }
+
+    // --- learning --------------------------------------------------------------
+
+    /** Expected cook time for a dish right now, in ms. */
+    public long estimateMs(String dish) {
+        Ewma d = byDish.get(dish);
+        if (d != null && d.samples >= MIN_SAMPLES) return Math.round(d.value);
+        Ewma s = byStation.get(stationOf.apply(dish));
+        if (s != null && s.samples > 0) return Math.round(s.value);
+        if (d != null && d.samples > 0) return Math.round(d.value);
+        return overall.samples > 0 ? Math.round(overall.value) : defaultMs;
+    }
+
+    private void learn(String dish, long cookMs) {
+        String station = stationOf.apply(dish);
+        byDish.computeIfAbsent(dish, k -> new Ewma()).add(cookMs, alpha);
+        byStation.computeIfAbsent(station, k -> new Ewma()).add(cookMs, alpha);
+        overall.add(cookMs, alpha);
+        // a moved average can change any queued dish that falls back to it
+        List<Node> moved = new ArrayList<>();
+        for (Map.Entry<String, DishNodes> e : nodesByDish.entrySet()) {
+            DishNodes g = e.getValue();
+            long est = estimateMs(e.getKey());
+            if (est == g.est) continue;
+            g.est = est;
+            for (Node n : g.nodes) {
+                n.est = est;
+                moved.add(n);
+                touch(n.row);
+            }
+        }
+        if (moved.size() > nodes.size() / 8) {
+            pullAll(root);
+        } else {
+            for (Node n : moved) repull(root, n.row);
+        }
+    }
+
+    // --- queue mirror ----------------------------------------------------------
+
+    /** An order joined the queue. */
+    public void add(OrderRow r) {
+        if (nodes.containsKey(r)) return;
+        long est = estimateMs(r.getDish());
+        Node n = new Node(r, rnd.nextInt(), est);
+        n.group = nodesByDish.computeIfAbsent(r.getDish(), k -> new DishNodes(est));
+        n.group.nodes.add(n);
+        root = insert(root, n);
+        nodes.put(r, n);
+        touch(r);
+    }
+
+    /** The head started cooking at {@code startedAt} (epoch ms). */
+    public void started(OrderRow head, long startedAt) {
+        startedHead = head;
+        headStartedAt = startedAt;
+        touch(head);
+    }
+
+    /**
+     * An order left the queue. If it was cooked ({@code cookMs} >= 0) the measured time
+     * trains the estimates.
+     */
+    public void finished(OrderRow r, long cookMs) {
+        remove(r);
+        if (cookMs >= 0) learn(r.getDish(), cookMs);
+    }
+
+    public void remove(OrderRow r) {
+        Node n = nodes.remove(r);
+        if (n == null) return;
+        root = delete(root, r);
+        n.group.nodes.remove(n);
+        if (n.group.nodes.isEmpty()) nodesByDish.remove(r.getDish(), n.group);
+        if (startedHead == r) startedHead = null;
+        touch(r);
+    }
+
+    public void clear() {
+        root = null;
+        nodes.clear();
+        nodesByDish.clear();
+        startedHead = null;
+        dirtyFrom = null;
+    }
+
+    public int size() { return nodes.size(); }
+
+    // --- queries ---------------------------------------------------------------
+
+    /** Projected ready time (epoch ms) of a queued order, or -1 if it is not queued. */
+    public long etaOf(OrderRow r, long nowMs) {
+        Node n = nodes.get(r);
+        if (n == null) return -1;
+        return nowMs + Math.max(0, prefix(r) + n.est - headElapsed(nowMs));
+    }
+
+    /**
+     * Report orders whose ETA moved by at least {@code thresholdMs} since they were last
+     * reported (new orders always are). Walks from the earliest queue change since the
+     * last call with a running sum, O(log n) to get there and O(1) per order after it;
+     * the whole queue only when the clock has shifted every ETA by the threshold, so an
+     * order nothing changed for is re-reported within about twice the threshold.
+     */
+    public void forEachChanged(long nowMs, long thresholdMs, BiConsumer<OrderRow, Long> out) {
+        long elapsed = headElapsed(nowMs);
+        long base = nowMs - elapsed;
+        OrderRow from = dirtyFrom;
+        boolean all = !basePushed || Math.abs(base - pushedBase) >= thresholdMs;
+        if (!all && from == null) return;
+        if (all) {
+            basePushed = true;
+            pushedBase = base;
+        }
+        dirtyFrom = null;
+        long[] running = { all ? 0 : prefix(from) };
+        walk(root, all ? null : from, n -> {
+            running[0] += n.est;
+            long eta = nowMs + Math.max(0, running[0] - elapsed);
+            if (n.lastPushedEta == Long.MIN_VALUE || Math.abs(eta - n.lastPushedEta) >= thresholdMs) {
+                n.lastPushedEta = eta;
+                out.accept(n.row, eta);
+            }
+        });
+    }
+
+    /** Remember that {@code etaMs} was just reported for r, so forEachChanged skips it until it moves. */
+    public void markPushed(OrderRow r, long etaMs) {
+        Node n = nodes.get(r);
+        if (n != null) n.lastPushedEta = etaMs;
+    }
+
+    /** ETAs from r's queue position on may have moved (r need not be queued). */
+    private void touch(OrderRow r) {
+        if (dirtyFrom == null || r.compareTo(dirtyFrom) < 0) dirtyFrom = r;
+    }
+
+    /** Sum of the estimates of queued orders strictly before r (r need not be queued). */
+    private long prefix(OrderRow r) {
+        long ahead = 0;
+        Node cur = root;
+        while (cur != null) {
+            if (r.compareTo(cur.row) <= 0) {
+                cur = cur.left;
+            } else {
+                ahead += sum(cur.left) + cur.est;
+                cur = cur.right;
+            }
+        }
+        return ahead;
+    }
+
+    /** Time the current head has already cooked, capped at its estimate. */
+    private long headElapsed(long nowMs) {
+        Node head = first(root);
+        if (head == null || startedHead != head.row || headStartedAt == 0) return 0;
+        return Math.min(head.est, Math.max(0, nowMs - headStartedAt));
+    }
+
+    // --- treap -----------------------------------------------------------------
+
+    private static long sum(Node n) { return n == null ? 0 : n.sum; }
+
+    private static void pull(Node n) { n.sum = n.est + sum(n.left) + sum(n.right); }
+
+    private static Node first(Node n) {
+        if (n == null) return null;
+        while (n.left != null) n = n.left;
+        return n;
+    }
+
+    private static Node insert(Node t, Node n) {
+        if (t == null) return n;
+        if (n.row.compareTo(t.row) < 0) {
+            t.left = insert(t.left, n);
+            if (t.left.prio > t.prio) t = rotateRight(t);
+        } else {
+            t.right = insert(t.right, n);
+            if (t.right.prio > t.prio) t = rotateLeft(t);
+        }
+        pull(t);
+        return t;
+    }
+
+    private static Node delete(Node t, OrderRow r) {
+        if (t == null) return null;
+        int c = r.compareTo(t.row);
+        if (c < 0) t.left = delete(t.left, r);
+        else if (c > 0) t.right = delete(t.right, r);
+        else return merge(t.left, t.right);
+        pull(t);
+        return t;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.prio > b.prio) {
+            a.right = merge(a.right, b);
+            pull(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        pull(b);
+        return b;
+    }
+
+    private static Node rotateRight(Node t) {
+        Node l = t.left;
+        t.left = l.right;
+        l.right = t;
+        pull(t);
+        pull(l);
+        return l;
+    }
+
+    private static Node rotateLeft(Node t) {
+        Node r = t.right;
+        t.right = r.left;
+        r.left = t;
+        pull(t);
+        pull(r);
+        return r;
+    }
+
+    /** Fix the sums on the root path of r after its estimate changed. */
+    private static void repull(Node t, OrderRow r) {
+        if (t == null) return;
+        int c = r.compareTo(t.row);
+        if (c < 0) repull(t.left, r);
+        else if (c > 0) repull(t.right, r);
+        pull(t);
+    }
+
+    /** Recompute every subtree sum, children first. */
+    private static void pullAll(Node t) {
+        if (t == null) return;
+        pullAll(t.left);
+        pullAll(t.right);
+        pull(t);
+    }
+
+    /** In-order from the first order at or after {@code from} (null = from the start). */
+    private static void walk(Node n, OrderRow from, java.util.function.Consumer<Node> f) {
+        // iterative so a long queue can't overflow the stack
+        Deque<Node> stack = new ArrayDeque<>();
+        if (from != null) {
+            // stack up the nodes >= from on the search path; they are the next in order
+            while (n != null) {
+                if (from.compareTo(n.row) <= 0) {
+                    stack.push(n);
+                    n = n.left;
+                } else {
+                    n = n.right;
+                }
+            }
+        }
+        while (n != null || !stack.isEmpty()) {
+            while (n != null) { stack.push(n); n = n.left; }
+            n = stack.pop();
+            f.accept(n);
+            n = n.right;
+        }
+    }
+}
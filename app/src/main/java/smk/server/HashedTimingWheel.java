@@ -0,0 +1,98 @@
+package smk.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel: one thread drives timeouts for any number of connections.
+ * Scheduling and cancelling are O(1); each tick only looks at one slot.
+ * Timers fire on the wheel thread, so tasks must be short and non-blocking.
+ */
+public class HashedTimingWheel {
+
+    /** Handle for a scheduled task. */
+    public static final class Timeout {
+        private final Runnable task;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        Timeout(Runnable task, long rounds) {
+            this.task = task;
+            this.rounds = rounds;
+        }
+
+        public void cancel() { cancelled = true; }
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    private final long tickNanos;
+    private final List<Timeout>[] slots;
+    private final Object lock = new Object();
+    private long tick = 0;
+    private volatile boolean running = false;
+    private Thread worker;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public HashedTimingWheel(long tickMs, int slotCount) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.slots = new List[slotCount];
+        for (int i = 0; i < slotCount; i++) slots[i] = new ArrayList<>();
+    }
+
+    public void start(String name) {
+        if (running) return;
+        running = true;
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (worker != null) worker.interrupt();
+    }
+
+    /** Run task after roughly delayMs (rounded up to the tick). */
+    public Timeout schedule(Runnable task, long delayMs) {
+        long ticks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delayMs) + tickNanos - 1) / tickNanos);
+        synchronized (lock) {
+            Timeout t = new Timeout(task, (ticks - 1) / slots.length);
+            slots[(int) ((tick + ticks) % slots.length)].add(t);
+            return t;
+        }
+    }
+
+    private void run() {
+        long next = System.nanoTime() + tickNanos;
+        while (running) {
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                try { TimeUnit.NANOSECONDS.sleep(sleep); }
+                catch (InterruptedException e) { return; }
+            }
+            next += tickNanos;
+            advance();
+        }
+    }
+
+    /** Move the wheel on by one tick and run what is due; the wheel thread calls this, tests call it directly. */
+    void advance() {
+        List<Timeout> due = new ArrayList<>();
+        synchronized (lock) {
+            tick++;
+            Iterator<Timeout> it = slots[(int) (tick % slots.length)].iterator();
+            while (it.hasNext()) {
+                Timeout t = it.next();
+                if (t.cancelled) { it.remove(); continue; }
+                if (t.rounds > 0) { t.rounds--; continue; }
+                it.remove();
+                due.add(t);
+            }
+        }
+        for (Timeout t : due) {
+            try { t.task.run(); } catch (RuntimeException ignored) {}
+        }
+    }
+}
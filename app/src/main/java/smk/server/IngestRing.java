@@ -0,0 +1,143 @@
+package smk.server;
+
+import smk.shared.Settings;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Bounded lock-free multi-producer/single-consumer ring, Disruptor style: events are
+ * allocated once, producers claim a sequence with one CAS, fill the slot in place and
+ * publish it; one consumer thread hands published events to a {@link Handler} in batches,
+ * with an end-of-batch flag so the handler can flush whatever it accumulated.
+ *
+ * Nothing is allocated per event and the consumer takes no lock. When the ring is empty
+ * the consumer spins for SMK_INGEST_SPIN iterations (default 200; 0 on a single CPU, where
+ * spinning only keeps the producer off the core), then parks until a
+ * producer wakes it; a producer finding the ring full parks briefly and retries, which
+ * holds back that producer's socket reads rather than dropping anything.
+ */
+public final class IngestRing<E> {
+
+    /** Consumer side; runs on the ring's thread only. */
+    public interface Handler<E> {
+        void onEvent(E event, boolean endOfBatch);
+    }
+
+    /** Producer side: copy the arguments into a pre-allocated event. */
+    public interface Translator<E, A, B> {
+        void translate(E event, A a, B b);
+    }
+
+    private static final int SPIN = (int) Settings.get("SMK_INGEST_SPIN",
+            Runtime.getRuntime().availableProcessors() > 1 ? 200 : 0);
+    private static final long FULL_BACKOFF_NANOS = 50_000;
+
+    private static final class Slot<E> {
+        final E event;
+        volatile long published = -1; // sequence whose event the slot holds
+
+        Slot(E event) { this.event = event; }
+    }
+
+    private final Slot<E>[] slots;
+    private final int mask;
+    private final int batchMax;
+    private final Handler<E> handler;
+    private final AtomicLong claimed = new AtomicLong(); // next sequence to hand to a producer
+    private volatile long consumed;                      // every sequence below this is free again
+    private volatile boolean sleeping;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * @param capacity rounded up to a power of two
+     * @param batchMax events handed over before the handler is told the batch ended
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public IngestRing(int capacity, int batchMax, Supplier<E> factory, Handler<E> handler) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) slots[i] = new Slot<>(factory.get());
+        this.mask = size - 1;
+        this.batchMax = Math.max(1, batchMax);
+        this.handler = handler;
+    }
+
+    public void start(String name) {
+        if (running) return;
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        running = true; // publishes worker to producers
+        worker.start();
+    }
+
+    /** Stop the consumer; events still in the ring are dropped and producers give up. */
+    public void stop() {
+        running = false;
+        if (worker != null) LockSupport.unpark(worker);
+    }
+
+    /**
+     * Claim the next slot, let {@code t} fill it and publish it; waits while the ring is
+     * full. Returns false, publishing nothing, if the ring is stopped.
+     */
+    public <A, B> boolean publish(Translator<E, A, B> t, A a, B b) {
+        if (!running) return false;
+        long seq;
+        while (true) {
+            seq = claimed.get();
+            if (seq - consumed >= slots.length) {
+                if (!running) return false;
+                LockSupport.parkNanos(this, FULL_BACKOFF_NANOS);
+            } else if (claimed.compareAndSet(seq, seq + 1)) {
+                break;
+            }
+        }
+        Slot<E> s = slots[(int) seq & mask];
+        t.translate(s.event, a, b);
+        s.published = seq;
+        if (sleeping) LockSupport.unpark(worker);
+        return true;
+    }
+
+    /** Events published and not yet consumed (approximate). */
+    public int size() {
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+
+    public int capacity() { return slots.length; }
+
+    private void run() {
+        long next = 0;
+        int idle = 0;
+        while (running) {
+            Slot<E> s = slots[(int) next & mask];
+            if (s.published != next) {
+                if (++idle < SPIN) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                sleeping = true;
+                if (s.published != next && running) LockSupport.park(this);
+                sleeping = false;
+                idle = 0;
+                continue;
+            }
+            idle = 0;
+            // everything published from here on in order, up to batchMax, is one batch
+            long end = next + 1;
+            while (end - next < batchMax && slots[(int) end & mask].published == end) end++;
+            for (long i = next; i < end; i++) {
+                try {
+                    handler.onEvent(slots[(int) i & mask].event, i == end - 1);
+                } catch (RuntimeException e) {
+                    System.err.println("[INGEST][ERR] " + e);
+                }
+            }
+            next = end;
+            consumed = next;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package smk.server;
+
+import com.sun.net.httpserver.HttpServer;
+import smk.shared.Metrics;
+import smk.shared.Settings;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link Metrics#scrape()} on http://127.0.0.1:&lt;port&gt;/metrics for Prometheus.
+ * Port comes from SMK_METRICS_PORT (default 9464); 0 or a negative value disables it.
+ */
+public class MetricsHttpServer {
+
+    private final int port;
+    private HttpServer server;
+
+    public MetricsHttpServer(int port) {
+        this.port = port;
+    }
+
+    public static MetricsHttpServer fromEnvironment() {
+        return new MetricsHttpServer((int) Settings.get("SMK_METRICS_PORT", 9464));
+    }
+
+    /** Start serving; returns false (and stays stopped) if disabled or the port is taken. */
+    public boolean start() {
+        if (port <= 0 || server != null) return false;
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            return false;
+        }
+        server.createContext("/metrics", ex -> {
+            byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            ex.sendResponseHeaders(200, body.length);
+            try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        return true;
+    }
+
+    public int getPort() { return port; }
+
+    public void stop() {
+        if (server != null) server.stop(0);
+        server = null;
+    }
+}
@@ -0,0 +1,119 @@
+package smk.server;
+
+import smk.shared.Settings;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * Java Flight Recorder events for the order path
+ * (socket read/parse -> Lamport -> runLater -> enqueue -> START -> DONE -> broadcast).
+ * Disabled events cost next to nothing, so the call sites are always instrumented.
+ *
+ * Set SMK_JFR=1 to start a continuous recording at startup: a ring buffer bounded by
+ * SMK_JFR_MAX_AGE_MIN (default 30) and SMK_JFR_MAX_MB (default 64), dumped to
+ * smk-orders.jfr on exit. An ad-hoc dump works too: jcmd &lt;pid&gt; JFR.dump name=smk-orders
+ */
+public final class OrderEvents {
+
+    private OrderEvents() {}
+
+    /** Common fields; the dashboard (smk.server.ui) fills these in too, hence public. */
+    @Category({ "SmartKitchen", "Orders" })
+    public abstract static class OrderEvent extends Event {
+        @Label("Client") String client;
+        @Label("Dish") String dish;
+        @Label("Lamport") int lamport;
+
+        public OrderEvent set(String client, String dish, int lamport) {
+            this.client = client;
+            this.dish = dish;
+            this.lamport = lamport;
+            return this;
+        }
+    }
+
+    @Name("smk.OrderReceive") @Label("Order Receive")
+    @Description("Socket line parsed into an ORDER")
+    public static final class Receive extends OrderEvent {
+        @Label("Connection") public int connection;
+        @Label("Bytes") public int bytes;
+    }
+
+    @Name("smk.LamportAssign") @Label("Lamport Assign")
+    @Description("clock.onReceive for an ORDER")
+    public static final class LamportAssign extends OrderEvent {
+        @Label("Client ts") public int tsClient;
+    }
+
+    @Name("smk.FxApply") @Label("FX Apply")
+    @Description("Order applied on the FX thread; the wait before it ran is in runLaterWaitNanos")
+    public static final class FxApply extends OrderEvent {
+        @Label("runLater wait (ns)") public long runLaterWaitNanos;
+    }
+
+    @Name("smk.Enqueue") @Label("Enqueue")
+    @Description("Order offered to the kitchen queue")
+    public static final class Enqueue extends OrderEvent {
+        @Label("Queue depth") public int depth;
+    }
+
+    @Name("smk.OrderStart") @Label("Order Start")
+    public static final class Start extends OrderEvent {
+        @Label("Queue wait (ns)") public long waitNanos;
+    }
+
+    @Name("smk.OrderDone") @Label("Order Done")
+    public static final class Done extends OrderEvent {
+        @Label("Service time (ns)") public long serviceNanos;
+    }
+
+    @Name("smk.BroadcastWrite") @Label("Broadcast Write")
+    @Description("One message written to every connection")
+    public static final class BroadcastWrite extends OrderEvent {
+        @Label("Type") public String type;
+        @Label("Connections") public int connections;
+    }
+
+    private static Recording recording;
+
+    /** Start the continuous recording if SMK_JFR is set. Returns true if one is running. */
+    public static synchronized boolean startFromEnvironment() {
+        if (!Settings.flag("SMK_JFR", false)) return false;
+        if (recording != null) return true;
+        try {
+            Recording r = new Recording(Configuration.getConfiguration("default"));
+            r.setName("smk-orders");
+            for (Class<? extends Event> c : java.util.List.of(Receive.class, LamportAssign.class, FxApply.class,
+                    Enqueue.class, Start.class, Done.class, BroadcastWrite.class)) {
+                r.enable(c).withoutThreshold();
+            }
+            r.setToDisk(true);
+            r.setMaxAge(Duration.ofMinutes((long) Settings.get("SMK_JFR_MAX_AGE_MIN", 30)));
+            r.setMaxSize((long) Settings.get("SMK_JFR_MAX_MB", 64) * 1024 * 1024);
+            r.setDestination(Paths.get("smk-orders.jfr"));
+            r.setDumpOnExit(true);
+            r.start();
+            recording = r;
+            return true;
+        } catch (IOException | ParseException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /** Write the current ring buffer to a file (no-op if not recording). */
+    public static synchronized void dump(Path file) throws IOException {
+        if (recording != null) recording.dump(file);
+    }
+}
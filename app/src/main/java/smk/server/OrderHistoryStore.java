@@ -0,0 +1,589 @@
+package smk.server;
+
+import smk.shared.OrderPriority;
+import smk.shared.OrderRow;
+import smk.shared.Settings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only on-disk history of finished tickets.
+ *
+ * Tickets are written in DONE order as fixed 40-byte records into segment files
+ * (seg-000001.dat, ...) of up to SEGMENT_RECORDS records. Client and dish names are
+ * interned into small integer ids kept in strings.dict, so records stay fixed-size and
+ * filters compare ints. For each segment a sparse index holds the Lamport and done-time
+ * range of every block of INDEX_EVERY records; a query skips whole segments and blocks
+ * whose range misses it and scans the rest of the memory-mapped file. Ranges rather than
+ * sorted samples because neither key is monotonic in append order: priorities and aging
+ * reorder the queue and each shard has its own Lamport clock. A full segment's index is
+ * saved next to it (seg-000001.idx) so startup only rescans the active segment.
+ * Nothing beyond the sparse index is kept on the heap.
+ *
+ * Appends are handed to a single writer thread, so calling {@link #append} from the FX
+ * thread never blocks on disk.
+ */
+public class OrderHistoryStore implements AutoCloseable {
+
+    /** One finished ticket as read back from disk. */
+    public static final class Record {
+        public final int lamport;
+        public final int tsClient;
+        public final String client;
+        public final String dish;
+        public final long receivedAt;
+        public final long startedAt;
+        public final long doneAt;
+
+        Record(int lamport, int tsClient, String client, String dish, long receivedAt, long startedAt, long doneAt) {
+            this.lamport = lamport;
+            this.tsClient = tsClient;
+            this.client = client;
+            this.dish = dish;
+            this.receivedAt = receivedAt;
+            this.startedAt = startedAt;
+            this.doneAt = doneAt;
+        }
+
+        @Override
+        public String toString() {
+            return "L=" + lamport + " " + client + " " + dish + " done@" + doneAt;
+        }
+    }
+
+    static final int RECORD_BYTES = 40;
+    static final int SEGMENT_RECORDS = 1 << 16;
+    static final int INDEX_EVERY = 1024;
+
+    private static final int INDEX_MAGIC = 0x534d4b49; // "SMKI"
+
+    /** Per-segment sparse index; block b covers records [b * INDEX_EVERY, (b + 1) * INDEX_EVERY). */
+    private static final class Segment {
+        final Path path;
+        final int seq;
+        int records;
+        long minDone = Long.MAX_VALUE, maxDone = Long.MIN_VALUE;
+        int minLamport = Integer.MAX_VALUE, maxLamport = Integer.MIN_VALUE;
+        long[] blockMinDone = new long[4], blockMaxDone = new long[4];
+        int[] blockMinLamport = new int[4], blockMaxLamport = new int[4];
+        int blocks;
+        MappedByteBuffer sealedMap; // cached once the segment is full
+
+        Segment(Path path, int seq) {
+            this.path = path;
+            this.seq = seq;
+        }
+
+        Path indexPath() {
+            String n = path.getFileName().toString();
+            return path.resolveSibling(n.substring(0, n.length() - 4) + ".idx");
+        }
+
+        void note(int index, int lamport, long doneAt) {
+            int b = index / INDEX_EVERY;
+            if (b == blocks) {
+                if (blocks == blockMinDone.length) grow(blocks * 2);
+                blockMinDone[b] = blockMaxDone[b] = doneAt;
+                blockMinLamport[b] = blockMaxLamport[b] = lamport;
+                blocks++;
+            } else {
+                blockMinDone[b] = Math.min(blockMinDone[b], doneAt);
+                blockMaxDone[b] = Math.max(blockMaxDone[b], doneAt);
+                blockMinLamport[b] = Math.min(blockMinLamport[b], lamport);
+                blockMaxLamport[b] = Math.max(blockMaxLamport[b], lamport);
+            }
+            minDone = Math.min(minDone, doneAt);
+            maxDone = Math.max(maxDone, doneAt);
+            minLamport = Math.min(minLamport, lamport);
+            maxLamport = Math.max(maxLamport, lamport);
+        }
+
+        void grow(int n) {
+            blockMinDone = Arrays.copyOf(blockMinDone, n);
+            blockMaxDone = Arrays.copyOf(blockMaxDone, n);
+            blockMinLamport = Arrays.copyOf(blockMinLamport, n);
+            blockMaxLamport = Arrays.copyOf(blockMaxLamport, n);
+        }
+
+        /** Which blocks may hold a key in [lo, hi]. */
+        boolean[] blocksOverlapping(long lo, long hi, boolean byLamport) {
+            boolean[] hit = new boolean[blocks];
+            for (int b = 0; b < blocks; b++) {
+                hit[b] = byLamport
+                        ? blockMaxLamport[b] >= lo && blockMinLamport[b] <= hi
+                        : blockMaxDone[b] >= lo && blockMinDone[b] <= hi;
+            }
+            return hit;
+        }
+    }
+
+    private final Path dir;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, Integer> clientIds = new HashMap<>();
+    private final Map<String, Integer> dishIds = new HashMap<>();
+    private final List<String> clientNames = new ArrayList<>();
+    private final List<String> dishNames = new ArrayList<>();
+    private final Object dictLock = new Object();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "order-history-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private FileChannel active;
+    private BufferedWriter dictOut;
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_BYTES);
+
+    public OrderHistoryStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        loadDictionary();
+        loadSegments();
+        dictOut = Files.newBufferedWriter(dir.resolve("strings.dict"), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /** Store under SMK_HISTORY_DIR (system property or env), default ./smk-history. */
+    public static OrderHistoryStore fromEnvironment() throws IOException {
+        return new OrderHistoryStore(Paths.get(Settings.get("SMK_HISTORY_DIR", "smk-history")));
+    }
+
+    // --- write path ----------------------------------------------------------
+
+    /** Queue a finished ticket for appending. Stamps are read now, on the caller's thread. */
+    public void append(OrderRow r) {
+        int lamport = r.getLamportOrder(), ts = r.getTsClient();
+        String client = r.getClient(), dish = r.getDish();
+        long recv = r.getReceivedAt(), start = r.getStartedAt();
+        long done = r.getDoneAt() != 0 ? r.getDoneAt() : System.currentTimeMillis();
+        writer.execute(() -> {
+            try { write(lamport, ts, client, dish, recv, start, done); }
+            catch (IOException e) { System.err.println("[HIST][ERR] " + e.getMessage()); }
+        });
+    }
+
+    private void write(int lamport, int ts, String client, String dish, long recv, long start, long done)
+            throws IOException {
+        int cid = intern(client, clientIds, clientNames, 'c');
+        int did = intern(dish, dishIds, dishNames, 'd');
+        synchronized (this) {
+            Segment seg = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (seg == null || seg.records >= SEGMENT_RECORDS || active == null) {
+                seg = roll(seg);
+            }
+            scratch.clear();
+            scratch.putInt(lamport).putInt(ts).putInt(cid).putInt(did)
+                   .putLong(recv).putLong(start).putLong(done).flip();
+            while (scratch.hasRemaining()) active.write(scratch);
+            seg.note(seg.records, lamport, done);
+            seg.records++;
+        }
+    }
+
+    private Segment roll(Segment full) throws IOException {
+        if (active != null) {
+            active.force(false);
+            active.close();
+            active = null;
+        }
+        if (full != null && full.records >= SEGMENT_RECORDS) saveIndex(full);
+        Segment seg = full;
+        if (full == null || full.records >= SEGMENT_RECORDS) {
+            int seq = full == null ? 1 : full.seq + 1;
+            seg = new Segment(dir.resolve(String.format("seg-%06d.dat", seq)), seq);
+            segments.add(seg);
+        }
+        active = FileChannel.open(seg.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return seg;
+    }
+
+    private int intern(String s, Map<String, Integer> ids, List<String> names, char kind) throws IOException {
+        String v = s == null ? "" : s;
+        synchronized (dictLock) {
+            Integer id = ids.get(v);
+            if (id != null) return id;
+            int nid = names.size();
+            names.add(v);
+            ids.put(v, nid);
+            // the dictionary is line-based: escape so the name reads back exactly as interned
+            dictOut.write(kind + "\t" + nid + "\t" + escape(v));
+            dictOut.newLine();
+            dictOut.flush();
+            return nid;
+        }
+    }
+
+    // --- read path -----------------------------------------------------------
+
+    /**
+     * Tickets finished in [fromMillis, toMillis], optionally only for one dish and/or client
+     * (null = any). Results are streamed in append order.
+     */
+    public void queryByTime(long fromMillis, long toMillis, String dish, String client, Consumer<Record> out)
+            throws IOException {
+        int did = idFilter(dish, dishIds);
+        int cid = idFilter(client, clientIds);
+        if (did == -2 || cid == -2) return; // unknown name => no matches
+        for (Segment seg : snapshot()) {
+            synchronized (this) {
+                if (seg.records == 0 || seg.maxDone < fromMillis || seg.minDone > toMillis) continue;
+            }
+            scan(seg, fromMillis, toMillis, false, did, cid, out);
+        }
+    }
+
+    /**
+     * Tickets with Lamport in [from, to], in append order. With several shards a Lamport
+     * value is only unique per shard, so this may return one ticket per shard for it.
+     */
+    public void queryByLamport(int from, int to, Consumer<Record> out) throws IOException {
+        for (Segment seg : snapshot()) {
+            synchronized (this) {
+                if (seg.records == 0 || seg.maxLamport < from || seg.minLamport > to) continue;
+            }
+            scan(seg, from, to, true, -1, -1, out);
+        }
+    }
+
+    /** All tickets of one client, across the whole history. */
+    public void queryByClient(String client, Consumer<Record> out) throws IOException {
+        queryByTime(Long.MIN_VALUE, Long.MAX_VALUE, null, client, out);
+    }
+
+    /** Raw fields of one record; names are dictionary ids (see {@link #clientName}, {@link #dishName}). */
+    public interface RawVisitor {
+        void visit(int lamport, int clientId, int dishId, long receivedAt, long startedAt, long doneAt);
+    }
+
+    /** Number of segments on disk, including the one being appended to. */
+    public synchronized int segmentCount() { return segments.size(); }
+
+    /** Records currently in segment {@code seg}; only ever grows. */
+    public synchronized int segmentRecords(int seg) { return segments.get(seg).records; }
+
+    /**
+     * Bulk read of records [from, to) of one segment without materializing Records or names.
+     * Safe to call from several threads at once (each gets its own view of the mapping).
+     */
+    public void scanRaw(int seg, int from, int to, RawVisitor v) throws IOException {
+        Segment s;
+        synchronized (this) { s = segments.get(seg); }
+        ByteBuffer map = map(s);
+        int end = Math.min(to, map.limit() / RECORD_BYTES);
+        for (int i = from; i < end; i++) {
+            int base = i * RECORD_BYTES;
+            v.visit(map.getInt(base), map.getInt(base + 8), map.getInt(base + 12),
+                    map.getLong(base + 16), map.getLong(base + 24), map.getLong(base + 32));
+        }
+    }
+
+    public String clientName(int id) { return name(clientNames, id); }
+
+    public String dishName(int id) { return name(dishNames, id); }
+
+    public synchronized long size() {
+        long n = 0;
+        for (Segment s : segments) n += s.records;
+        return n;
+    }
+
+    private synchronized List<Segment> snapshot() {
+        return new ArrayList<>(segments);
+    }
+
+    /**
+     * Scan the records whose key (done time, or Lamport when byLamport) is in [lo, hi],
+     * skipping blocks whose key range misses it. Only matching records are materialized.
+     */
+    private void scan(Segment seg, long lo, long hi, boolean byLamport,
+                      int did, int cid, Consumer<Record> out) throws IOException {
+        ByteBuffer map = map(seg);
+        int records;
+        boolean[] hit;
+        synchronized (this) {
+            records = Math.min(seg.records, map.limit() / RECORD_BYTES);
+            hit = seg.blocksOverlapping(lo, hi, byLamport);
+        }
+        for (int i = 0; i < records; i++) {
+            int b = i / INDEX_EVERY;
+            if (b < hit.length && !hit[b]) {
+                i = (b + 1) * INDEX_EVERY - 1;
+                continue;
+            }
+            int base = i * RECORD_BYTES;
+            long key = byLamport ? map.getInt(base) : map.getLong(base + 32);
+            if (key < lo || key > hi) continue;
+            int c = map.getInt(base + 8), d = map.getInt(base + 12);
+            if ((did >= 0 && d != did) || (cid >= 0 && c != cid)) continue;
+            out.accept(new Record(map.getInt(base), map.getInt(base + 4), name(clientNames, c), name(dishNames, d),
+                    map.getLong(base + 16), map.getLong(base + 24), map.getLong(base + 32)));
+        }
+    }
+
+    private ByteBuffer map(Segment seg) throws IOException {
+        synchronized (this) {
+            if (seg.sealedMap != null) return seg.sealedMap.duplicate();
+        }
+        try (FileChannel ch = FileChannel.open(seg.path, StandardOpenOption.READ)) {
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            synchronized (this) {
+                if (seg.records >= SEGMENT_RECORDS) seg.sealedMap = m;
+            }
+            return m;
+        }
+    }
+
+    private String name(List<String> names, int id) {
+        synchronized (dictLock) {
+            return id >= 0 && id < names.size() ? names.get(id) : "?";
+        }
+    }
+
+    private int idFilter(String name, Map<String, Integer> ids) {
+        if (name == null) return -1;
+        synchronized (dictLock) {
+            Integer id = ids.get(name);
+            return id == null ? -2 : id;
+        }
+    }
+
+    // --- startup -------------------------------------------------------------
+
+    private void loadDictionary() throws IOException {
+        Path p = dir.resolve("strings.dict");
+        if (!Files.exists(p)) return;
+        for (String line : Files.readAllLines(p, StandardCharsets.UTF_8)) {
+            String[] f = line.split("\t", 3);
+            if (f.length < 3) continue;
+            List<String> names = f[0].equals("c") ? clientNames : dishNames;
+            Map<String, Integer> ids = f[0].equals("c") ? clientIds : dishIds;
+            int id = Integer.parseInt(f[1]);
+            while (names.size() <= id) names.add("?");
+            String name = unescape(f[2]);
+            names.set(id, name);
+            ids.put(name, id);
+        }
+    }
+
+    private void loadSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "seg-*.dat")) {
+            for (Path p : ds) files.add(p);
+        }
+        files.sort(Comparator.naturalOrder());
+        for (Path p : files) {
+            String n = p.getFileName().toString();
+            Segment seg = new Segment(p, Integer.parseInt(n.substring(4, n.length() - 4)));
+            try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long whole = ch.size() / RECORD_BYTES * RECORD_BYTES;
+                if (whole != ch.size()) ch.truncate(whole); // torn write from a crash
+                MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_ONLY, 0, whole);
+                int records = (int) (whole / RECORD_BYTES);
+                if (!loadIndex(seg, records)) {
+                    seg.records = records;
+                    for (int i = 0; i < records; i++) {
+                        int base = i * RECORD_BYTES;
+                        seg.note(i, m.getInt(base), m.getLong(base + 32));
+                    }
+                    if (records >= SEGMENT_RECORDS) saveIndex(seg);
+                }
+                if (seg.records >= SEGMENT_RECORDS) seg.sealedMap = m;
+            }
+            segments.add(seg);
+        }
+    }
+
+    /** Write a sealed segment's sparse index next to it; best effort, it can be rebuilt. */
+    private static void saveIndex(Segment seg) {
+        Path tmp = seg.indexPath().resolveSibling(seg.indexPath().getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(seg.records);
+            out.writeInt(seg.blocks);
+            for (int b = 0; b < seg.blocks; b++) {
+                out.writeInt(seg.blockMinLamport[b]);
+                out.writeInt(seg.blockMaxLamport[b]);
+                out.writeLong(seg.blockMinDone[b]);
+                out.writeLong(seg.blockMaxDone[b]);
+            }
+        } catch (IOException e) {
+            System.err.println("[HIST][ERR] index " + seg.path.getFileName() + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp, seg.indexPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[HIST][ERR] index " + seg.path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /** Load a saved index if it describes exactly {@code records} records; false means rescan. */
+    private static boolean loadIndex(Segment seg, int records) {
+        Path p = seg.indexPath();
+        if (!Files.exists(p)) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != records) return false;
+            int blocks = in.readInt();
+            if (blocks != (records + INDEX_EVERY - 1) / INDEX_EVERY) return false;
+            seg.grow(Math.max(4, blocks));
+            for (int b = 0; b < blocks; b++) {
+                seg.blockMinLamport[b] = in.readInt();
+                seg.blockMaxLamport[b] = in.readInt();
+                seg.blockMinDone[b] = in.readLong();
+                seg.blockMaxDone[b] = in.readLong();
+                seg.minLamport = Math.min(seg.minLamport, seg.blockMinLamport[b]);
+                seg.maxLamport = Math.max(seg.maxLamport, seg.blockMaxLamport[b]);
+                seg.minDone = Math.min(seg.minDone, seg.blockMinDone[b]);
+                seg.maxDone = Math.max(seg.maxDone, seg.blockMaxDone[b]);
+            }
+            seg.blocks = blocks;
+            seg.records = records;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Backslash-escape what would break a dictionary line. */
+    private static String escape(String v) {
+        if (v.indexOf('\\') < 0 && v.indexOf('\t') < 0 && v.indexOf('\n') < 0 && v.indexOf('\r') < 0) return v;
+        StringBuilder sb = new StringBuilder(v.length() + 8);
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Inverse of {@link #escape}; an unknown escape is kept as written. */
+    private static String unescape(String v) {
+        if (v.indexOf('\\') < 0) return v;
+        StringBuilder sb = new StringBuilder(v.length());
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c != '\\' || i + 1 == v.length()) {
+                sb.append(c);
+                continue;
+            }
+            char n = v.charAt(++i);
+            switch (n) {
+                case '\\' -> sb.append('\\');
+                case 't' -> sb.append('\t');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                default -> sb.append('\\').append(n);
+            }
+        }
+        return sb.toString();
+    }
+
+    // --- unfinished queue across a restart ----------------------------------
+
+    /**
+     * Save the orders still in the kitchen queue at shutdown (pending.tsv, replaced
+     * atomically) so the next start picks them up with {@link #takePending}. They were
+     * acked with READY, so no terminal will resend them. One line per order: Lamport,
+     * shard, client ts, request id, priority, then session, client and dish escaped.
+     * Once the file is in place, the copy {@link #takePending} kept at start is dropped.
+     */
+    public void savePending(List<OrderRow> rows) throws IOException {
+        Path file = dir.resolve("pending.tsv");
+        if (rows.isEmpty()) {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir.resolve("pending.tsv.restored"));
+            return;
+        }
+        Path tmp = dir.resolve("pending.tsv.tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (OrderRow r : rows) {
+                out.write(r.getLamportOrder() + "\t" + r.getShard() + "\t" + r.getTsClient() + "\t"
+                        + r.getRequestId() + "\t" + r.getPriority().name() + "\t"
+                        + escape(r.getSession() == null ? "" : r.getSession()) + "\t"
+                        + escape(r.getClient()) + "\t" + escape(r.getDish()));
+                out.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(dir.resolve("pending.tsv.restored"));
+    }
+
+    /**
+     * Orders saved by the last {@link #savePending}, in queue order. The file is not
+     * deleted but renamed to pending.tsv.restored, and read again from there if this run
+     * dies before its own savePending: the orders live only in memory until then, and
+     * serving one twice beats losing it.
+     */
+    public List<OrderRow> takePending() throws IOException {
+        Path file = dir.resolve("pending.tsv");
+        Path restored = dir.resolve("pending.tsv.restored");
+        if (Files.exists(file)) {
+            Files.move(file, restored, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else if (!Files.exists(restored)) {
+            return List.of();
+        }
+        List<OrderRow> rows = new ArrayList<>();
+        for (String line : Files.readAllLines(restored, StandardCharsets.UTF_8)) {
+            String[] f = line.split("\t", -1);
+            if (f.length != 8) continue;
+            try {
+                OrderRow r = new OrderRow(unescape(f[6]), unescape(f[7]), Integer.parseInt(f[2]),
+                        Integer.parseInt(f[0]), Long.parseLong(f[3]), OrderPriority.parse(f[4]), Integer.parseInt(f[1]));
+                r.setSession(f[5].isEmpty() ? null : unescape(f[5]));
+                rows.add(r);
+            } catch (NumberFormatException e) {
+                System.err.println("[HIST][WARN] bad pending line skipped: " + line);
+            }
+        }
+        return rows;
+    }
+
+    /** Wait until every queued append is written, then force the active segment to disk. */
+    public void flush() {
+        try {
+            writer.submit(() -> {
+                synchronized (this) {
+                    if (active != null) active.force(false);
+                }
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println("[HIST][ERR] flush: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        try { writer.awaitTermination(5, TimeUnit.SECONDS); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        synchronized (this) {
+            try {
+                if (active != null) { active.force(true); active.close(); }
+                if (dictOut != null) dictOut.close();
+            } catch (IOException ignored) {}
+            active = null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package smk.server;
+
+import smk.shared.OrderPriority;
+import smk.shared.OrderRow;
+import smk.shared.Settings;
+
+import java.util.*;
+
+/**
+ * The kitchen queue: one Lamport-ordered level per {@link OrderPriority} class, served from the
+ * highest class down, plus a pinned level for orders being cooked so a RUSH that arrives
+ * mid-cook waits for a free pan.
+ *
+ * Aging: an order moves up one class for every SMK_AGING_SEC (default 180, 0 = off) it has
+ * waited, so LOW and NORMAL tickets can't starve behind a stream of VIPs. Promotion times
+ * live in their own sorted set, so finding what is due costs O(log n) per promoted order
+ * rather than a scan. Every operation here is O(log n) in the queue length (the number of
+ * classes is fixed).
+ *
+ * An order's {@link OrderRow#getRank() rank} is the level it sits in, which is what
+ * {@link OrderRow#compareTo} orders by first. Anything else keeping rows in a sorted
+ * structure (the ETA treap) must take them out before {@link #promote} or {@link #start}
+ * and put them back after.
+ *
+ * Not thread-safe: owned by the FX thread like the rest of the dashboard state.
+ */
+public class PriorityOrderQueue {
+
+    private static final int COOKING = -1;
+    private static final int LEVELS = OrderPriority.values().length + 1; // + the pinned level
+
+    private final long agingMs;
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private final TreeSet<OrderRow>[] levels = new TreeSet[LEVELS];
+    private final Map<OrderRow, Long> promoteAt = new IdentityHashMap<>();
+    private final TreeSet<OrderRow> aging;
+    private int size;
+
+    public PriorityOrderQueue() {
+        this((long) (Settings.get("SMK_AGING_SEC", 180) * 1000));
+    }
+
+    public PriorityOrderQueue(long agingMs) {
+        this.agingMs = agingMs;
+        for (int i = 0; i < LEVELS; i++) levels[i] = new TreeSet<>();
+        aging = new TreeSet<>(Comparator.<OrderRow>comparingLong(promoteAt::get).thenComparing(Comparator.naturalOrder()));
+    }
+
+    private TreeSet<OrderRow> level(OrderRow r) { return levels[r.getRank() + 1]; }
+
+    public void offer(OrderRow r) {
+        r.setRank(r.getPriority().ordinal());
+        level(r).add(r);
+        size++;
+        schedule(r);
+    }
+
+    /** Next order to cook (the cooking one while there is one), or null. */
+    public OrderRow peek() {
+        for (TreeSet<OrderRow> l : levels) {
+            if (!l.isEmpty()) return l.first();
+        }
+        return null;
+    }
+
+    /** Next order nobody is cooking yet, or null. */
+    public OrderRow peekWaiting() {
+        for (int i = 1; i < LEVELS; i++) {
+            if (!levels[i].isEmpty()) return levels[i].first();
+        }
+        return null;
+    }
+
+    /** Orders started and not yet done (one per busy cook). */
+    public int cookingCount() { return levels[0].size(); }
+
+    public OrderRow poll() {
+        OrderRow head = peek();
+        if (head != null) remove(head);
+        return head;
+    }
+
+    public boolean remove(OrderRow r) {
+        if (!level(r).remove(r)) return false;
+        unschedule(r);
+        size--;
+        return true;
+    }
+
+    /** Pin r as cooking: it stays ahead of every waiting order until removed, whatever arrives. */
+    public void start(OrderRow r) {
+        if (r.getRank() == COOKING || !level(r).remove(r)) return;
+        unschedule(r);
+        r.setRank(COOKING);
+        level(r).add(r);
+    }
+
+    /** Waiting orders whose next promotion is due at {@code nowMs}, oldest deadline first. */
+    public List<OrderRow> dueForPromotion(long nowMs) {
+        List<OrderRow> due = new ArrayList<>();
+        for (OrderRow r : aging) {
+            if (promoteAt.get(r) > nowMs) break;
+            due.add(r);
+        }
+        return due;
+    }
+
+    /** Move r up one class; it keeps its Lamport place inside the new class. */
+    public void promote(OrderRow r) {
+        if (r.getRank() <= 0 || !level(r).remove(r)) return;
+        unschedule(r);
+        r.setRank(r.getRank() - 1);
+        level(r).add(r);
+        schedule(r);
+    }
+
+    private void schedule(OrderRow r) {
+        if (agingMs <= 0 || r.getRank() <= 0) return;
+        int promotionsSoFar = r.getPriority().ordinal() - r.getRank();
+        promoteAt.put(r, r.getReceivedAt() + (promotionsSoFar + 1) * agingMs);
+        aging.add(r);
+    }
+
+    private void unschedule(OrderRow r) {
+        if (promoteAt.containsKey(r)) {
+            aging.remove(r);
+            promoteAt.remove(r);
+        }
+    }
+
+    public boolean contains(OrderRow r) { return level(r).contains(r); }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    /** Orders waiting in class p right now (after aging). */
+    public int sizeOf(OrderPriority p) { return levels[p.ordinal() + 1].size(); }
+
+    public void clear() {
+        for (TreeSet<OrderRow> l : levels) l.clear();
+        aging.clear();
+        promoteAt.clear();
+        size = 0;
+    }
+
+    /** All orders in the order they will be cooked; O(n). */
+    public List<OrderRow> toList() {
+        List<OrderRow> out = new ArrayList<>(size);
+        for (TreeSet<OrderRow> l : levels) out.addAll(l);
+        return out;
+    }
+}
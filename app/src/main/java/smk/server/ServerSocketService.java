@@ -1,20 +1,71 @@
 package smk.server;
 
 import smk.shared.LamportClock;
+import smk.shared.LineChannel;
+import smk.shared.LocalTransport;
 import smk.shared.Message;
 import smk.shared.Message.MessageType;
+import smk.shared.Metrics;
+import smk.shared.Settings;
+import smk.shared.TlsChannel;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simple TCP server that accepts clients, reads line-based JSON messages,
  * advances the Lamport clock, and notifies a listener.
+ *
+ * Connections are capped (SMK_MAX_CONNECTIONS). A single timing-wheel thread watches
+ * every connection: after SMK_PING_MS of silence the server sends PING, and a peer
+ * that stays silent for SMK_IDLE_TIMEOUT_MS is evicted, which frees its handler thread
+ * and drops it from broadcasts.
+ *
+ * Besides TCP the server listens on a Unix-domain socket (see {@link LocalTransport}) so
+ * terminals on the same machine skip the TCP/IP stack; both feed the same handler.
+ *
+ * Each connection is a {@link LineChannel} (UTF-8, bounded lines, coalesced writes). A
+ * message is encoded once into a read-only buffer and every recipient gets a duplicate of
+ * it in its send queue, so a broadcast to N terminals costs N enqueues plus the writes,
+ * not N encodings. A peer whose queue passes SMK_SEND_QUEUE_MAX frames is evicted.
+ *
+ * With SMK_TLS=1 the TCP port speaks TLS only (see {@link TlsChannel}); the handshake
+ * runs on the connection's own thread and must finish within SMK_TLS_HANDSHAKE_MS. The
+ * Unix socket stays plaintext: it never leaves the machine.
+ *
+ * With SMK_CAPTURE_FILE set (or {@link #startCapture}) every line in and out, plus each
+ * local clock tick, is recorded for {@link TrafficReplay}.
+ *
+ * ORDERs are admitted per {@link ShardRouter shard}: a hash of the client picks the clock
+ * and dedupe window. Handler threads only parse and publish an ORDER into the shard's
+ * {@link IngestRing}; the shard's single ingest thread dedupes, admits and stamps it, so
+ * handlers never race for the clock, and queues the replies in batches (SMK_INGEST_RING slots,
+ * default 4096; up to SMK_INGEST_BATCH, default 256, orders per batch) with each
+ * connection corked until the batch is done.
+ *
+ * {@link #stop} is graceful (see {@link #shutdown}): a rolling restart loses no READY.
  */
 public class ServerSocketService {
 
@@ -24,38 +75,262 @@ public class ServerSocketService {
          * so we can send it back in the READY message.
          */
         int onOrder(String client, String dish, int tsClient);
+
+        /** Full-message variant; override to see fields such as the request id. */
+        default int onOrder(Message m) {
+            return onOrder(m.getClient(), m.getDish(), m.getTs());
+        }
+
+        /**
+         * Sharded variant, called on the shard's ingest thread one order at a time; assign
+         * from {@code shard.getClock()}, which no other ingest thread advances.
+         */
+        default int onOrder(Message m, ShardRouter.Shard shard) {
+            return onOrder(m);
+        }
+
+        /**
+         * End of an ingest batch: the orders just admitted on this shard, in order, each
+         * with its Lamport value set. Called before their READYs go out; the place to hand
+         * them to another thread in one go. The list is reused afterwards.
+         */
+        default void onOrders(List<Message> admitted, ShardRouter.Shard shard) {}
+
         void onLog(String msg);
+
+        /**
+         * Called during a graceful stop once every acknowledgement has gone out and the
+         * terminals have hung up: flush durable state before the process goes away.
+         */
+        default void onShutdown() {}
     }
 
     private final int port;
     private final LamportClock clock;
     private final Listener listener;
+    private final AdmissionController admission;
+    private final ShardRouter shards;
+    private final IngestRing<Ingest>[] ingest;
     private final ExecutorService pool = Executors.newCachedThreadPool();
-    private final List<PrintWriter> clientWriters = new CopyOnWriteArrayList<>();
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    // sockets counted against maxConnections from accept() until closed, TLS handshakes included
+    private final AtomicInteger openSockets = new AtomicInteger();
+
+    private static final Metrics.Counter ACCEPTED = Metrics.counter("smk_net_connections_total",
+            "Client connections by outcome", "outcome=\"accepted\"");
+    private static final Metrics.Counter REFUSED = Metrics.counter("smk_net_connections_total",
+            "Client connections by outcome", "outcome=\"refused\"");
+    private static final Metrics.Counter EVICTED = Metrics.counter("smk_net_connections_total",
+            "Client connections by outcome", "outcome=\"evicted\"");
+    private static final Metrics.Counter BYTES_IN = Metrics.counter("smk_net_bytes_total",
+            "Protocol bytes (UTF-8 lines, inside TLS)", "dir=\"in\"");
+    private static final Metrics.Counter BYTES_OUT = Metrics.counter("smk_net_bytes_total",
+            "Protocol bytes (UTF-8 lines, inside TLS)", "dir=\"out\"");
+    private static final Metrics.Counter[] MSG_IN = messageCounters("in");
+    private static final Metrics.Counter[] MSG_OUT = messageCounters("out");
+
+    private static Metrics.Counter[] messageCounters(String dir) {
+        MessageType[] types = MessageType.values();
+        Metrics.Counter[] cs = new Metrics.Counter[types.length];
+        for (MessageType t : types) {
+            cs[t.ordinal()] = Metrics.counter("smk_net_messages_total", "Messages by type and direction",
+                    "dir=\"" + dir + "\",type=\"" + t.name() + "\"");
+        }
+        return cs;
+    }
+    private final AtomicInteger nextConnectionId = new AtomicInteger(1);
+    private final HashedTimingWheel idleWheel = new HashedTimingWheel(250, 128);
+    private final int maxConnections = (int) Settings.get("SMK_MAX_CONNECTIONS", 64);
+    private final long pingAfterMs = (long) Settings.get("SMK_PING_MS", 10_000);
+    private final long idleTimeoutMs = (long) Settings.get("SMK_IDLE_TIMEOUT_MS", 30_000);
+    private final int sendQueueMax = (int) Settings.get("SMK_SEND_QUEUE_MAX", 1024);
+    private final long tlsHandshakeMs = (long) Settings.get("SMK_TLS_HANDSHAKE_MS", 10_000);
+    private final long drainMs = (long) Settings.get("SMK_DRAIN_MS", 5_000);
+    private final int restartRetryMs = (int) Settings.get("SMK_RESTART_RETRY_MS", 2_000);
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "server-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** One connected terminal, over TCP or the local socket. */
+    private static final class Connection {
+        final int id;
+        final LineChannel io;
+        final String peer;
+        volatile long lastSeenNanos = System.nanoTime();
+        volatile boolean pingSent = false;
+
+        Connection(int id, LineChannel io, String peer) {
+            this.id = id;
+            this.io = io;
+            this.peer = peer;
+        }
+
+        void close() { io.close(); }
+
+        void touch() {
+            lastSeenNanos = System.nanoTime();
+            pingSent = false;
+        }
+    }
+
+    /** Ring slot: an ORDER on its way from a handler thread to its shard's ingest thread. */
+    private static final class Ingest {
+        Connection conn;
+        Message order;
+    }
+
+    private static final IngestRing.Translator<Ingest, Connection, Message> TO_INGEST = (e, c, m) -> {
+        e.conn = c;
+        e.order = m;
+    };
 
     private volatile boolean running = false;
-    private ServerSocket serverSocket;
+    private final AtomicBoolean stopping = new AtomicBoolean();
+    private volatile boolean draining;      // new ORDERs get BUSY
+    private volatile boolean outputsClosed; // SHUTDOWN sent and flushed: nothing more to say
+    private final AtomicInteger admitting = new AtomicInteger(); // ORDERs between admission and reply
+    private ServerSocketChannel tcpServer;
+    private ServerSocketChannel unixServer;
+    private Path unixPath;
+    private volatile TrafficCapture capture;
+    private boolean tls;
 
     public ServerSocketService(int port, LamportClock clock, Listener listener) {
+        this(port, clock, listener, AdmissionController.fromEnvironment());
+    }
+
+    public ServerSocketService(int port, LamportClock clock, Listener listener, AdmissionController admission) {
+        this(port, clock, listener, admission, ShardRouter.fromEnvironment(clock));
+    }
+
+    public ServerSocketService(int port, LamportClock clock, Listener listener, AdmissionController admission,
+                               ShardRouter shards) {
         this.port = port;
         this.clock = clock;
         this.listener = listener;
+        this.admission = admission;
+        this.shards = shards;
+        int ringSize = (int) Settings.get("SMK_INGEST_RING", 4096);
+        int batchMax = (int) Settings.get("SMK_INGEST_BATCH", 256);
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        IngestRing<Ingest>[] rings = new IngestRing[shards.size()];
+        for (ShardRouter.Shard shard : shards.shards()) {
+            rings[shard.getId()] = new IngestRing<>(ringSize, batchMax, Ingest::new, new ShardIngest(shard));
+        }
+        this.ingest = rings;
+        // per instance (by port) so a second server in the process doesn't take over the series;
+        // a restart on the same port rebinds them to the new instance
+        String inst = "port=\"" + port + "\"";
+        Metrics.gauge("smk_net_connections", "Open client connections", inst).bind(connections::size);
+        Metrics.gauge("smk_queue_depth", "Orders admitted and not yet finished", inst).bind(admission::getDepth);
+        Metrics.gauge("smk_ingest_depth", "ORDERs read and waiting for an ingest thread", inst).bind(() -> {
+            long n = 0;
+            for (IngestRing<Ingest> ring : ingest) n += ring.size();
+            return n;
+        });
     }
 
     public void start() {
         if (running) return;
         running = true;
+        String cap = Settings.get("SMK_CAPTURE_FILE");
+        if (cap != null) startCapture(Paths.get(cap));
+        idleWheel.start("server-idle-wheel");
+        for (int i = 0; i < ingest.length; i++) ingest[i].start("ingest-" + i);
+        tls = TlsChannel.enabled();
+        if (tls) {
+            try {
+                TlsChannel.serverContext(); // fail now on a bad keystore, not on the first client
+            } catch (IOException e) {
+                log("[NET][ERR] TLS: " + e.getMessage() + "; TCP port not opened");
+                if (LocalTransport.enabled()) startUnix();
+                return;
+            }
+        }
+        // bind before touching the socket file: if the port is taken, another instance owns both
+        try {
+            ServerSocketChannel ss = ServerSocketChannel.open();
+            try {
+                ss.bind(new InetSocketAddress(port));
+            } catch (IOException e) {
+                ss.close();
+                throw e;
+            }
+            tcpServer = ss;
+        } catch (IOException e) {
+            log("[NET][ERR] port " + port + ": " + e.getMessage());
+            running = false;
+            return;
+        }
         pool.submit(this::acceptLoop);
-        log("[NET] Server listening on port " + port);
+        log("[NET] Server listening on port " + port + (tls ? " (TLS)" : "")
+                + (shards.size() > 1 ? ", " + shards.size() + " shards" : ""));
+        if (LocalTransport.enabled()) startUnix();
+    }
+
+    /** Also accept local terminals on the Unix-domain socket file. */
+    private void startUnix() {
+        Path path = LocalTransport.socketPath(port);
+        if (Files.exists(path) && accepting(path)) {
+            log("[NET][WARN] " + path + " is in use by another server, TCP only");
+            return;
+        }
+        try {
+            Files.deleteIfExists(path); // left over from a crash; bind would fail otherwise
+            ServerSocketChannel ch = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            ch.bind(UnixDomainSocketAddress.of(path));
+            unixServer = ch;
+            unixPath = path;
+            pool.submit(this::unixAcceptLoop);
+            log("[NET] Local clients on " + path);
+        } catch (IOException | UnsupportedOperationException e) {
+            log("[NET][WARN] Unix socket unavailable (" + e.getMessage() + "), TCP only");
+        }
+    }
+
+    /** True if something accepts on the socket file, i.e. it is not just left over from a crash. */
+    private static boolean accepting(Path path) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(path)).close();
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private void unixAcceptLoop() {
+        try {
+            while (running) {
+                SocketChannel ch = unixServer.accept();
+                String peer = "local#" + nextConnectionId.get();
+                if (!reserveSocket()) {
+                    refuse(ch, peer, false);
+                    continue;
+                }
+                log("[NET] Client connected: " + peer + " (unix)");
+                pool.submit(() -> handleClient(ch, peer, false));
+            }
+        } catch (IOException e) {
+            if (running) log("[NET][ERR] unix " + e.getMessage());
+        }
     }
 
     private void acceptLoop() {
-        try (ServerSocket ss = new ServerSocket(port)) {
-            serverSocket = ss;
+        try (ServerSocketChannel ss = tcpServer) {
             while (running) {
-                Socket socket = ss.accept();
-                log("[NET] Client connected: " + socket.getRemoteSocketAddress());
-                pool.submit(() -> handleClient(socket));
+                SocketChannel ch = ss.accept();
+                String peer = String.valueOf(ch.getRemoteAddress());
+                if (!reserveSocket()) {
+                    refuse(ch, peer, tls);
+                    continue;
+                }
+                ch.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true); // LineChannel coalesces; Nagle would only add delay
+                log("[NET] Client connected: " + peer);
+                pool.submit(() -> handleClient(ch, peer, tls));
             }
         } catch (IOException e) {
             if (running) log("[NET][ERR] " + e.getMessage());
@@ -64,49 +339,398 @@ public class ServerSocketService {
         }
     }
 
-    private void handleClient(Socket socket) {
-        PrintWriter out = null;
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-            clientWriters.add(out);
+    /**
+     * Count a just-accepted socket against the cap, or return false if it is full. Counting
+     * here rather than when the connection is registered means sockets still waiting for a
+     * handler thread or a TLS handshake can't push the total past the cap.
+     */
+    private boolean reserveSocket() {
+        if (openSockets.incrementAndGet() <= maxConnections) return true;
+        openSockets.decrementAndGet();
+        return false;
+    }
+
+    /** Over the connection cap: tell the peer and hang up. */
+    private void refuse(SocketChannel ch, String peer, boolean secure) {
+        log("[NET][WARN] Connection limit " + maxConnections + " reached, refusing " + peer);
+        try (ch) {
+            if (secure) {
+                REFUSED.inc(); // a BUSY would cost a handshake; the client's backoff covers it
+                return;
+            }
+            Message busy = new Message(MessageType.BUSY, null, null, 0, clock.now(), "server full");
+            busy.setRetryAfterMs(5000);
+            String json = busy.toJson();
+            ByteBuffer f = LineChannel.frame(json);
+            BYTES_OUT.add(f.remaining());
+            while (f.hasRemaining()) ch.write(f);
+            TrafficCapture cap = capture;
+            if (cap != null) cap.out(0, json);
+            MSG_OUT[MessageType.BUSY.ordinal()].inc();
+            REFUSED.inc();
+        } catch (IOException ignored) {}
+    }
+
+    /** Serve one accepted socket until it closes; gives back its {@link #reserveSocket} slot. */
+    private void handleClient(SocketChannel channel, String peer, boolean secure) {
+        try {
+            serve(channel, peer, secure);
+        } finally {
+            openSockets.decrementAndGet();
+        }
+    }
+
+    private void serve(SocketChannel channel, String peer, boolean secure) {
+        LineChannel in;
+        if (secure) {
+            try {
+                in = new LineChannel(handshake(channel), flusher, sendQueueMax);
+            } catch (IOException e) {
+                log("[NET][TLS] handshake with " + peer + " failed: " + e.getMessage());
+                try { channel.close(); } catch (IOException ignored) {}
+                return;
+            }
+        } else {
+            in = new LineChannel(channel, flusher, sendQueueMax);
+        }
+        Connection conn = new Connection(nextConnectionId.getAndIncrement(), in, peer);
+        try {
+            connections.add(conn);
+            ACCEPTED.inc();
+            scheduleIdleCheck(conn, pingAfterMs);
             String line;
-            while ((line = in.readLine()) != null && running) {
+            long counted = 0;
+            while ((line = in.readLine()) != null) {
+                conn.touch();
+                BYTES_IN.add(in.bytesRead() - counted);
+                counted = in.bytesRead();
+                TrafficCapture cap = capture;
+                if (cap != null) cap.in(conn.id, line);
+                OrderEvents.Receive rx = new OrderEvents.Receive();
+                rx.begin();
                 Message m = Message.fromJson(line);
-                if (m.getType() == MessageType.ORDER) {
-                    int lam = listener.onOrder(m.getClient(), m.getDish(), m.getTs());
-
-                    // Reply READY to the sender with server Lamport.
-                    Message ack = new Message(MessageType.READY, m.getClient(), m.getDish(), m.getTs(), lam,
-                            "queued");
-                    out.println(ack.toJson());
+                if (m.getType() != null) MSG_IN[m.getType().ordinal()].inc();
+                if (m.getType() == MessageType.ORDER && rx.shouldCommit()) {
+                    rx.set(m.getClient(), m.getDish(), 0); // Lamport not assigned yet
+                    rx.connection = conn.id;
+                    rx.bytes = line.length();
+                    rx.commit();
+                }
+                if (outputsClosed) {
+                    // already said goodbye; an ORDER read now stays un-acked in the terminal's outbox
+                } else if (m.getType() == MessageType.ORDER) {
+                    // The shard's ingest thread replies READY (with server Lamport) or BUSY.
+                    admitting.incrementAndGet();
+                    if (!ingest[shards.shardFor(m.getClient()).getId()].publish(TO_INGEST, conn, m)) {
+                        admitting.decrementAndGet(); // stopped: stays un-acked in the terminal's outbox
+                    }
+                } else if (m.getType() == MessageType.PING) {
+                    send(conn, new Message(MessageType.PONG, null, null, 0, clock.now(), null));
+                } else if (m.getType() == MessageType.PONG) {
+                    // liveness only; touch() above already recorded it
                 } else {
                     log("[NET] Unknown message: " + line);
                 }
             }
         } catch (IOException e) {
-            log("[NET][ERR] client " + socket.getRemoteSocketAddress() + " " + e.getMessage());
+            log("[NET][ERR] client " + peer + " " + e.getMessage());
+        } finally {
+            connections.remove(conn);
+            conn.close();
+            log("[NET] Client disconnected: " + peer);
+        }
+    }
+
+    /** Server side of the TLS handshake; a peer that stalls it is cut off. */
+    private TlsChannel handshake(SocketChannel ch) throws IOException {
+        ScheduledFuture<?> deadline = flusher.schedule(() -> {
+            try { ch.close(); } catch (IOException ignored) {}
+        }, tlsHandshakeMs, TimeUnit.MILLISECONDS);
+        try {
+            return TlsChannel.server(ch);
         } finally {
-            if (out != null) clientWriters.remove(out);
-            try { socket.close(); } catch (IOException ignored) {}
-            log("[NET] Client disconnected: " + socket.getRemoteSocketAddress());
+            deadline.cancel(false);
         }
     }
 
+    /**
+     * One shard's ingest consumer: admits ORDERs in ring order and replies in batches.
+     * Runs on the shard's ring thread only, so none of its state needs a lock.
+     */
+    private final class ShardIngest implements IngestRing.Handler<Ingest> {
+        private final ShardRouter.Shard shard;
+        private final List<Message> admitted = new ArrayList<>();
+        private final List<Connection> replyTo = new ArrayList<>();
+        private final List<Message> replies = new ArrayList<>();
+        private final Set<Connection> corked = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        ShardIngest(ShardRouter.Shard shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        public void onEvent(Ingest e, boolean endOfBatch) {
+            Connection c = e.conn;
+            Message m = e.order;
+            e.conn = null;
+            e.order = null;
+            try {
+                Message r = admitOrder(m);
+                if (corked.add(c)) c.io.cork();
+                replyTo.add(c);
+                replies.add(r);
+            } catch (RuntimeException ex) {
+                admitting.decrementAndGet();
+                log("[NET][ERR] ingest " + ex);
+            }
+            if (endOfBatch) finishBatch();
+        }
+
+        /**
+         * Build the reply and hand an admitted ORDER to the listener.
+         * A resend we already queued gets the Lamport value assigned the first time;
+         * an order over the client's rate or the global queue cap gets BUSY with a retry-after.
+         */
+        private Message admitOrder(Message m) {
+            String key = m.getSession() == null ? null : m.getSession() + "/" + m.getClient() + "#" + m.getTs();
+            Integer seen = shard.recall(key);
+            if (seen != null) {
+                log("[NET] Duplicate ORDER " + key + " ignored (L=" + seen + ")");
+                return reply(m, MessageType.READY, seen, "queued");
+            }
+            if (draining) {
+                Message busy = reply(m, MessageType.BUSY, shard.getClock().now(), "server restarting");
+                busy.setRetryAfterMs(restartRetryMs);
+                return busy;
+            }
+            AdmissionController.Decision d = admission.tryAdmit(m.getClient());
+            if (!d.admitted) {
+                log("[NET][BUSY] " + m.getClient() + " " + m.getDish() + " " + d.reason
+                        + ", retry in " + d.retryAfterMs + "ms");
+                Message busy = reply(m, MessageType.BUSY, shard.getClock().now(), d.reason);
+                busy.setRetryAfterMs(d.retryAfterMs);
+                return busy;
+            }
+            int lam = listener.onOrder(m, shard);
+            shard.remember(key, lam);
+            m.setLamport(lam);
+            admitted.add(m);
+            return reply(m, MessageType.READY, lam, "queued");
+        }
+
+        /** Listener first, then every reply, then one flush per connection. */
+        private void finishBatch() {
+            if (!admitted.isEmpty()) {
+                try {
+                    listener.onOrders(admitted, shard);
+                } catch (RuntimeException ex) {
+                    log("[NET][ERR] ingest listener " + ex);
+                }
+                admitted.clear();
+            }
+            for (int i = 0; i < replies.size(); i++) send(replyTo.get(i), replies.get(i));
+            admitting.addAndGet(-replies.size());
+            replyTo.clear();
+            replies.clear();
+            for (Connection c : corked) c.io.uncork(); // hands the batch to c's writer thread
+            corked.clear();
+        }
+    }
+
+    private static Message reply(Message m, MessageType type, int lamport, String text) {
+        Message r = new Message(type, m.getClient(), m.getDish(), m.getTs(), lamport, text);
+        r.setRequestId(m.getRequestId());
+        r.setSession(m.getSession());
+        return r;
+    }
+
+    public AdmissionController getAdmission() { return admission; }
+
+    public ShardRouter getShards() { return shards; }
+
+    /** An order left the kitchen queue; frees a slot for admission. */
+    public void orderFinished() { admission.release(); }
+
+    /** The kitchen queue was cleared or rebuilt with this many orders. */
+    public void queueReset(int queued) { admission.resetDepth(queued); }
+
+    /**
+     * Idle check driven by the timing wheel. Reschedules itself for the next moment
+     * something could change (ping due or timeout due), so an active connection costs
+     * one wheel entry, not one update per message.
+     */
+    private void scheduleIdleCheck(Connection c, long delayMs) {
+        idleWheel.schedule(() -> checkIdle(c), delayMs);
+    }
+
+    private void checkIdle(Connection c) {
+        if (!running || !connections.contains(c)) return;
+        long idleMs = (System.nanoTime() - c.lastSeenNanos) / 1_000_000;
+        if (idleMs >= idleTimeoutMs) {
+            evict(c, "idle " + idleMs + "ms");
+        } else if (idleMs >= pingAfterMs && !c.pingSent) {
+            c.pingSent = true;
+            // write off the wheel thread; a stuck peer must not stall every other timer
+            pool.submit(() -> send(c, new Message(MessageType.PING, null, null, 0, clock.now(), null)));
+            scheduleIdleCheck(c, idleTimeoutMs - idleMs);
+        } else {
+            scheduleIdleCheck(c, (c.pingSent ? idleTimeoutMs : pingAfterMs) - idleMs);
+        }
+    }
+
+    /** Drop a dead peer; its handler thread exits when the socket closes. */
+    private void evict(Connection c, String why) {
+        if (connections.remove(c)) {
+            EVICTED.inc();
+            log("[NET] Evicting client #" + c.id + " " + c.peer + " (" + why + ")");
+        }
+        c.close();
+    }
+
+    public int getConnectionCount() { return connections.size(); }
+
+    /** Record all traffic and clock ticks to {@code file}, replacing any running capture. */
+    public synchronized boolean startCapture(Path file) {
+        stopCapture();
+        try {
+            TrafficCapture c = new TrafficCapture(file, clock.now());
+            capture = c;
+            clock.setTickObserver(c::tick);
+            log("[NET][CAP] recording to " + file);
+            if (shards.size() > 1) log("[NET][CAP][WARN] " + shards.size() + " shards: replay needs SMK_SHARDS=1");
+            return true;
+        } catch (IOException e) {
+            log("[NET][ERR] capture " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public synchronized void stopCapture() {
+        TrafficCapture c = capture;
+        if (c == null) return;
+        capture = null;
+        clock.setTickObserver(null);
+        try { c.close(); } catch (IOException ignored) {}
+        log("[NET][CAP] stopped, " + c.getRecords() + " records");
+    }
+
+    private void send(Connection c, Message m) {
+        String json = m.toJson();
+        TrafficCapture cap = capture;
+        if (cap != null) cap.out(c.id, json);
+        MSG_OUT[m.getType().ordinal()].inc();
+        enqueue(c, LineChannel.frame(json));
+    }
+
     /** Broadcast a message to all connected clients (best-effort). */
     public void broadcast(Message m) {
+        OrderEvents.BroadcastWrite ev = new OrderEvents.BroadcastWrite();
+        ev.begin();
         String json = m.toJson();
-        for (PrintWriter w : clientWriters) {
-            try { w.println(json); }
-            catch (Exception ignored) {}
+        ByteBuffer frame = LineChannel.frame(json); // one heap frame shared by every peer
+        TrafficCapture cap = capture;
+        if (cap != null) cap.out(TrafficCapture.BROADCAST, json);
+        for (Connection c : connections) {
+            MSG_OUT[m.getType().ordinal()].inc();
+            enqueue(c, frame.duplicate());
+        }
+        if (ev.shouldCommit()) {
+            ev.set(m.getClient(), m.getDish(), m.getLamport());
+            ev.type = m.getType().name();
+            ev.connections = connections.size();
+            ev.commit();
         }
         log("[NET][BCAST] " + json);
     }
 
+    /**
+     * Queue a frame for c; c's writer thread writes it now or with the next coalesced batch.
+     * Never blocks, so the FX thread and the ingest threads can call it.
+     */
+    private void enqueue(Connection c, ByteBuffer frame) {
+        int bytes = frame.remaining();
+        if (!c.io.send(frame)) {
+            evict(c, "send queue full");
+            return;
+        }
+        BYTES_OUT.add(bytes);
+    }
+
+    /** Graceful stop with SMK_DRAIN_MS to drain; SMK_REDIRECT (host:port) is passed on to terminals. */
     public void stop() {
+        shutdown(Settings.get("SMK_REDIRECT"), drainMs);
+    }
+
+    /**
+     * Stop in phases, all within one {@code drainMs} deadline:
+     * <ol>
+     * <li>stop accepting connections and admitting orders (late ORDERs get BUSY and stay in
+     *     the terminal's outbox), and let admissions already under way finish;</li>
+     * <li>send SHUTDOWN to every terminal, with a retry-after and an optional redirect;</li>
+     * <li>drain every send queue, so each READY already owed is written;</li>
+     * <li>half-close: terminals read to end-of-stream and hang up, instead of a close
+     *     racing data still in flight (a reset can discard it);</li>
+     * <li>flush durable state: the capture file and {@link Listener#onShutdown};</li>
+     * <li>close whatever is left.</li>
+     * </ol>
+     */
+    public void shutdown(String redirect, long drainMs) {
+        if (!stopping.compareAndSet(false, true)) return;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, drainMs));
         running = false;
-        try { if (serverSocket != null) serverSocket.close(); } catch (IOException ignored) {}
+        draining = true;
+        closeListeners();
+        awaitQuiet(() -> admitting.get() == 0, deadline);
+
+        Message bye = new Message(MessageType.SHUTDOWN, null, null, 0, clock.now(), redirect);
+        bye.setRetryAfterMs(restartRetryMs);
+        broadcast(bye);
+        for (Connection c : connections) c.io.flush();
+        awaitQuiet(() -> connections.stream().allMatch(c -> c.io.queued() == 0), deadline);
+
+        outputsClosed = true;
+        int told = connections.size();
+        for (Connection c : connections) c.io.shutdownOutput();
+        awaitQuiet(connections::isEmpty, deadline);
+        int left = connections.size();
+        log("[NET] Drained " + (told - left) + "/" + told + " terminal(s)"
+                + (left > 0 ? ", closing " + left + " at the deadline" : ""));
+
+        stopCapture();
+        try {
+            if (listener != null) listener.onShutdown();
+        } catch (RuntimeException e) {
+            log("[NET][ERR] shutdown hook: " + e.getMessage());
+        }
+        closeAll();
+    }
+
+    private void closeListeners() {
+        try { if (tcpServer != null) tcpServer.close(); } catch (IOException ignored) {}
+        try {
+            if (unixServer != null) unixServer.close();
+            if (unixPath != null) Files.deleteIfExists(unixPath);
+        } catch (IOException ignored) {}
+    }
+
+    private static void awaitQuiet(java.util.function.BooleanSupplier done, long deadlineNanos) {
+        while (!done.getAsBoolean() && System.nanoTime() < deadlineNanos) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void closeAll() {
+        idleWheel.stop();
+        for (IngestRing<Ingest> ring : ingest) ring.stop();
         pool.shutdownNow();
-        clientWriters.clear();
+        flusher.shutdownNow();
+        for (Connection c : connections) c.close();
+        connections.clear();
         log("[NET] Server stopped.");
     }
 
@@ -0,0 +1,95 @@
+package smk.server;
+
+import smk.shared.LamportClock;
+import smk.shared.Metrics;
+import smk.shared.Settings;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits order ingest into SMK_SHARDS (default 1) kitchen-engine shards by a hash of the
+ * {@code client} field. Each shard has its own {@link LamportClock}, its own dedupe window
+ * and its own ingest thread (see {@link IngestRing}), so orders for clients on different
+ * shards never wait for each other and ingest scales with cores instead of queueing on one
+ * thread and one clock.
+ *
+ * A client always lands on the same shard (the hash is {@link String#hashCode}, which is
+ * fixed by the language spec), so a resend after a reconnect finds its first Lamport value
+ * in that shard's dedupe window. Lamport values are per shard; the merged order across
+ * shards is (Lamport, shard id), see {@link smk.shared.OrderRow#compareTo}. With one
+ * shard it uses the server's own clock and behaves exactly as before.
+ *
+ * Capture/replay ({@link TrafficReplay}) assumes one clock: record with one shard.
+ */
+public final class ShardRouter {
+
+    /** One kitchen-engine shard: a clock and the orders it assigned recently. */
+    public static final class Shard {
+        // (session, client, ts) -> Lamport already assigned; bounded so it can't grow forever
+        private static final int DEDUPE_WINDOW = 10_000;
+
+        private final int id;
+        private final LamportClock clock;
+        private final Metrics.Counter orders;
+        private final Map<String, Integer> recentOrders = new LinkedHashMap<>(256, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > DEDUPE_WINDOW;
+            }
+        };
+
+        Shard(int id, LamportClock clock) {
+            this.id = id;
+            this.clock = clock;
+            this.orders = Metrics.counter("smk_shard_orders_total", "Orders assigned a Lamport value, by shard",
+                    "shard=\"" + id + "\"");
+        }
+
+        public int getId() { return id; }
+
+        public LamportClock getClock() { return clock; }
+
+        /** Lamport value already given to this order, or null; shard's ingest thread only. */
+        Integer recall(String key) {
+            return key == null ? null : recentOrders.get(key);
+        }
+
+        /** Record an assignment; shard's ingest thread only. */
+        void remember(String key, int lamport) {
+            orders.inc();
+            if (key != null) recentOrders.put(key, lamport);
+        }
+    }
+
+    private final Shard[] shards;
+
+    /**
+     * @param merged the server's clock; the only shard's clock when there is one, otherwise
+     *               kept apart as the merge view's clock (see {@link LamportClock#advanceTo})
+     */
+    public ShardRouter(LamportClock merged, int count) {
+        shards = new Shard[Math.max(1, count)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, shards.length == 1 ? merged : new LamportClock());
+        }
+    }
+
+    /** Shard count from SMK_SHARDS (default 1). */
+    public static ShardRouter fromEnvironment(LamportClock merged) {
+        return new ShardRouter(merged, (int) Settings.get("SMK_SHARDS", 1));
+    }
+
+    public Shard shardFor(String client) {
+        if (shards.length == 1 || client == null) return shards[0];
+        int h = client.hashCode();
+        return shards[Math.floorMod(h ^ (h >>> 16), shards.length)];
+    }
+
+    public int size() { return shards.length; }
+
+    public List<Shard> shards() { return Collections.unmodifiableList(Arrays.asList(shards)); }
+}
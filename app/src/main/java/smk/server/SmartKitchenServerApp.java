@@ -67,7 +67,15 @@ public class SmartKitchenServerApp extends Application {
         logArea.setPrefRowCount(12);
 
         // Demo buttons (replace later with real socket events)
-
+        Button btnA = new Button("Simulate Client A");
+        btnA.setOnAction(e -> simulateIncoming("ClientA", "Pho"));
+        Button btnB = new Button("Simulate Client B");
+        btnB.setOnAction(e -> simulateIncoming("ClientB", "Banh Mi"));
+        Button btnStart = new Button("START head");
+        btnStart.setOnAction(e -> simulateStart());
+        Button btnEnd = new Button("END head");
+        btnEnd.setOnAction(e -> simulateEnd());
+        HBox actions = new HBox(8, btnA, btnB, btnStart, btnEnd);
 
         VBox root = new VBox(8, top, table, new Label("Logs:"), logArea, actions);
         root.setPadding(new Insets(12));
@@ -88,7 +96,17 @@ public class SmartKitchenServerApp extends Application {
             public void onLog(String msg) { log(msg); }
         });
         net.start();
-        stage.setOnCloseRequest(e -> { if (net != null) net.stop(); });
+        stage.setOnCloseRequest(e -> {
+            if (net == null) return;
+            // drain off the FX thread; exit once the orders it admits have been applied
+            e.consume();
+            stage.setOnCloseRequest(again -> again.consume());
+            Thread stopper = new Thread(() -> {
+                net.stop();
+                Platform.runLater(Platform::exit);
+            }, "server-shutdown");
+            stopper.start();
+        });
 
         log("Server ready. Listening (sockets + demo buttons).");
         refreshClock();
@@ -115,6 +133,7 @@ public class SmartKitchenServerApp extends Application {
 
     // ===== DEMO ONLY =====
     // Pretend a client message arrived: (client, dish, tsClient)
+    private void simulateIncoming(String client, String dish) {
         int tsClient = rnd.nextInt(10) + 1;
 
         // On RECV: serverClock = onReceive(tsClient)
@@ -0,0 +1,318 @@
+package smk.server;
+
+import smk.shared.MenuCatalog;
+import smk.shared.Settings;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.TextStyle;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Shift and history analytics over the {@link OrderHistoryStore}: per-dish and per-client
+ * volumes, average queue wait, an hour-of-week heatmap and station utilisation.
+ *
+ * The store is append-only, so results are kept as one running aggregate plus a cursor
+ * per segment; a refresh only reads records appended since the last one. Those records
+ * are split into chunks of CHUNK_RECORDS and summed with fork-join straight off the mapped
+ * segment files, one partial aggregate per chunk merged on the way up. The first refresh
+ * over a long history is the expensive one and scales with the cores available.
+ *
+ * {@link #start} refreshes on a background thread every SMK_ANALYTICS_SEC (default 30) and
+ * hands each new {@link Report} to a callback; nothing here runs on the FX thread.
+ * End-of-shift report from the command line: {@code java smk.server.TicketAnalytics [dir]}
+ */
+public class TicketAnalytics implements AutoCloseable {
+
+    static final int CHUNK_RECORDS = 16_384;
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    /** Immutable result of one refresh. */
+    public static final class Report {
+        public final long tickets;
+        /** Tickets per dish / client, largest first. */
+        public final Map<String, Long> dishVolumes;
+        public final Map<String, Long> clientVolumes;
+        /** Mean received-to-started wait; -1 when no ticket has both stamps. */
+        public final double avgWaitMs;
+        public final Map<String, Double> avgWaitMsByDish;
+        /** Tickets done per [day of week, Monday = 0][hour of day], local time. */
+        public final long[][] heatmap;
+        /** Share (0..1) of active hours a station spent cooking; one cook per station assumed. */
+        public final Map<String, Double> stationUtilisation;
+        public final long computeMillis;
+
+        Report(long tickets, Map<String, Long> dishVolumes, Map<String, Long> clientVolumes, double avgWaitMs,
+               Map<String, Double> avgWaitMsByDish, long[][] heatmap, Map<String, Double> stationUtilisation,
+               long computeMillis) {
+            this.tickets = tickets;
+            this.dishVolumes = dishVolumes;
+            this.clientVolumes = clientVolumes;
+            this.avgWaitMs = avgWaitMs;
+            this.avgWaitMsByDish = avgWaitMsByDish;
+            this.heatmap = heatmap;
+            this.stationUtilisation = stationUtilisation;
+            this.computeMillis = computeMillis;
+        }
+
+        /** Plain-text end-of-shift report. */
+        public String toText() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Tickets: %d   avg wait: %s   (computed in %d ms)%n",
+                    tickets, avgWaitMs < 0 ? "—" : String.format("%.1fs", avgWaitMs / 1000), computeMillis));
+            sb.append("\nBy dish:\n");
+            dishVolumes.forEach((d, n) -> {
+                Double w = avgWaitMsByDish.get(d);
+                sb.append(String.format("  %-24s %8d   wait %s%n", d, n, w == null ? "—" : String.format("%.1fs", w / 1000)));
+            });
+            sb.append("\nBy client:\n");
+            clientVolumes.forEach((c, n) -> sb.append(String.format("  %-24s %8d%n", c, n)));
+            sb.append("\nStation utilisation:\n");
+            stationUtilisation.forEach((s, u) -> sb.append(String.format("  %-24s %7.1f%%%n", s, u * 100)));
+            sb.append("\nHeatmap (tickets by hour):\n     ");
+            for (int h = 0; h < 24; h++) sb.append(String.format("%5d", h));
+            sb.append('\n');
+            for (int d = 0; d < 7; d++) {
+                sb.append(String.format("%-5s", DayOfWeek.of(d + 1).getDisplayName(TextStyle.SHORT, Locale.ROOT)));
+                for (int h = 0; h < 24; h++) sb.append(String.format("%5d", heatmap[d][h]));
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /** Mergeable sums, indexed by dictionary id. */
+    private static final class Partial implements OrderHistoryStore.RawVisitor {
+        final ZoneId zone;
+        long[] dishCount = new long[0], dishWait = new long[0], dishWaitN = new long[0], dishService = new long[0];
+        long[] clientCount = new long[0];
+        final long[] heat = new long[7 * 24];
+        final BitSet activeHours = new BitSet();
+        long tickets, waitSum, waitN;
+        // offset cache: tickets come roughly in done order, so the UTC hour rarely changes
+        private long cachedHour = Long.MIN_VALUE;
+        private long cachedOffsetMs;
+
+        Partial(ZoneId zone) {
+            this.zone = zone;
+        }
+
+        @Override
+        public void visit(int lamport, int clientId, int dishId, long receivedAt, long startedAt, long doneAt) {
+            tickets++;
+            if (dishId >= dishCount.length) growDish(dishId);
+            if (clientId >= clientCount.length) clientCount = Arrays.copyOf(clientCount, clientId * 2 + 8);
+            dishCount[dishId]++;
+            clientCount[clientId]++;
+            if (receivedAt > 0 && startedAt >= receivedAt) {
+                long w = startedAt - receivedAt;
+                waitSum += w;
+                waitN++;
+                dishWait[dishId] += w;
+                dishWaitN[dishId]++;
+            }
+            if (startedAt > 0 && doneAt >= startedAt) dishService[dishId] += doneAt - startedAt;
+            long hour = Math.floorDiv(doneAt, HOUR_MS);
+            if (hour != cachedHour) {
+                cachedHour = hour;
+                cachedOffsetMs = zone.getRules().getOffset(Instant.ofEpochMilli(doneAt)).getTotalSeconds() * 1000L;
+            }
+            long local = doneAt + cachedOffsetMs;
+            int dow = Math.floorMod(Math.floorDiv(local, DAY_MS) + 3, 7); // 1970-01-01 was a Thursday
+            int hod = (int) (Math.floorMod(local, DAY_MS) / HOUR_MS);
+            heat[dow * 24 + hod]++;
+            if (hour >= 0 && hour <= Integer.MAX_VALUE) activeHours.set((int) hour);
+        }
+
+        private void growDish(int id) {
+            int n = id * 2 + 8;
+            dishCount = Arrays.copyOf(dishCount, n);
+            dishWait = Arrays.copyOf(dishWait, n);
+            dishWaitN = Arrays.copyOf(dishWaitN, n);
+            dishService = Arrays.copyOf(dishService, n);
+        }
+
+        Partial merge(Partial o) {
+            if (o.dishCount.length > dishCount.length) growDish(o.dishCount.length);
+            if (o.clientCount.length > clientCount.length) clientCount = Arrays.copyOf(clientCount, o.clientCount.length);
+            for (int i = 0; i < o.dishCount.length; i++) {
+                dishCount[i] += o.dishCount[i];
+                dishWait[i] += o.dishWait[i];
+                dishWaitN[i] += o.dishWaitN[i];
+                dishService[i] += o.dishService[i];
+            }
+            for (int i = 0; i < o.clientCount.length; i++) clientCount[i] += o.clientCount[i];
+            for (int i = 0; i < heat.length; i++) heat[i] += o.heat[i];
+            activeHours.or(o.activeHours);
+            tickets += o.tickets;
+            waitSum += o.waitSum;
+            waitN += o.waitN;
+            return this;
+        }
+    }
+
+    /** Sums records [from, to) of one segment, splitting while the range is large. */
+    private final class Chunk extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable; never serialized here
+        final int seg, from, to;
+
+        Chunk(int seg, int from, int to) {
+            this.seg = seg;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= CHUNK_RECORDS) {
+                Partial p = new Partial(zone);
+                try { store.scanRaw(seg, from, to, p); }
+                catch (IOException e) { throw new UncheckedIOException(e); }
+                return p;
+            }
+            int mid = (from + to) >>> 1;
+            Chunk right = new Chunk(seg, mid, to);
+            right.fork();
+            Partial left = new Chunk(seg, from, mid).compute();
+            return left.merge(right.join());
+        }
+    }
+
+    private final OrderHistoryStore store;
+    private final Function<String, String> stationOf;
+    private final ZoneId zone;
+    private final ForkJoinPool pool;
+    private final List<Integer> consumed = new ArrayList<>(); // records already folded in, per segment
+    private Partial total;
+    private volatile Report latest;
+    private ScheduledExecutorService scheduler;
+
+    public TicketAnalytics(OrderHistoryStore store, Function<String, String> stationOf) {
+        this(store, stationOf, ZoneId.systemDefault(), ForkJoinPool.commonPool());
+    }
+
+    public TicketAnalytics(OrderHistoryStore store, Function<String, String> stationOf, ZoneId zone, ForkJoinPool pool) {
+        this.store = store;
+        this.stationOf = stationOf;
+        this.zone = zone;
+        this.pool = pool;
+        this.total = new Partial(zone);
+    }
+
+    /** Fold in tickets appended since the last refresh and build a new report. */
+    public synchronized Report refresh() throws IOException {
+        long t0 = System.nanoTime();
+        List<Chunk> work = new ArrayList<>();
+        int segs = store.segmentCount();
+        while (consumed.size() < segs) consumed.add(0);
+        int[] upTo = new int[segs];
+        for (int s = 0; s < segs; s++) {
+            upTo[s] = store.segmentRecords(s);
+            if (upTo[s] > consumed.get(s)) work.add(new Chunk(s, consumed.get(s), upTo[s]));
+        }
+        if (!work.isEmpty()) {
+            try {
+                Partial delta = pool.invoke(new RecursiveTask<Partial>() {
+                    @Override
+                    protected Partial compute() {
+                        invokeAll(work);
+                        Partial p = new Partial(zone);
+                        for (Chunk c : work) p.merge(c.join());
+                        return p;
+                    }
+                });
+                total.merge(delta);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (int s = 0; s < segs; s++) consumed.set(s, upTo[s]);
+        }
+        Report r = build(total, (System.nanoTime() - t0) / 1_000_000);
+        latest = r;
+        return r;
+    }
+
+    private Report build(Partial p, long computeMillis) {
+        Map<String, Long> dishes = new HashMap<>();
+        Map<String, long[]> dishWait = new HashMap<>();
+        Map<String, Long> busy = new HashMap<>();
+        for (int i = 0; i < p.dishCount.length; i++) {
+            if (p.dishCount[i] == 0) continue;
+            String d = store.dishName(i);
+            dishes.merge(d, p.dishCount[i], Long::sum);
+            long[] w = dishWait.computeIfAbsent(d, k -> new long[2]);
+            w[0] += p.dishWait[i];
+            w[1] += p.dishWaitN[i];
+            busy.merge(stationOf.apply(d), p.dishService[i], Long::sum);
+        }
+        Map<String, Long> clients = new HashMap<>();
+        for (int i = 0; i < p.clientCount.length; i++) {
+            if (p.clientCount[i] > 0) clients.merge(store.clientName(i), p.clientCount[i], Long::sum);
+        }
+        Map<String, Double> waits = new TreeMap<>();
+        dishWait.forEach((d, w) -> { if (w[1] > 0) waits.put(d, (double) w[0] / w[1]); });
+        long activeMs = Math.max(1, p.activeHours.cardinality()) * HOUR_MS;
+        Map<String, Double> util = new TreeMap<>();
+        busy.forEach((s, ms) -> util.put(s, Math.min(1.0, (double) ms / activeMs)));
+        long[][] heat = new long[7][24];
+        for (int d = 0; d < 7; d++) System.arraycopy(p.heat, d * 24, heat[d], 0, 24);
+        return new Report(p.tickets, byCountDesc(dishes), byCountDesc(clients),
+                p.waitN == 0 ? -1 : (double) p.waitSum / p.waitN, waits, heat, util, computeMillis);
+    }
+
+    private static Map<String, Long> byCountDesc(Map<String, Long> m) {
+        Map<String, Long> out = new LinkedHashMap<>();
+        m.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .forEach(e -> out.put(e.getKey(), e.getValue()));
+        return out;
+    }
+
+    /** Last report built, or null before the first refresh. */
+    public Report getLatest() { return latest; }
+
+    /** Refresh now and then every SMK_ANALYTICS_SEC on a background thread. */
+    public synchronized void start(Consumer<Report> onReport) {
+        if (scheduler != null) return;
+        long every = Math.max(1, (long) Settings.get("SMK_ANALYTICS_SEC", 30));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ticket-analytics");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try { onReport.accept(refresh()); }
+            catch (IOException | RuntimeException e) { System.err.println("[STATS][ERR] " + e.getMessage()); }
+        }, 0, every, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) System.setProperty("SMK_HISTORY_DIR", args[0]);
+        MenuCatalog catalog = MenuCatalog.fromEnvironment(new MenuCatalog.Listener() {
+            @Override public void onCatalog(MenuCatalog.Snapshot snapshot) {}
+            @Override public void onLog(String msg) { System.err.println(msg); }
+        });
+        MenuCatalog.Snapshot menu = catalog.load();
+        try (OrderHistoryStore store = OrderHistoryStore.fromEnvironment()) {
+            TicketAnalytics a = new TicketAnalytics(store, dish -> {
+                var d = menu == null ? null : menu.resolve(dish);
+                return d == null || d.getStation().isEmpty() ? "unassigned" : d.getStation();
+            });
+            System.out.print(a.refresh().toText());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package smk.server;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Compact recording of server traffic for {@link TrafficReplay}.
+ *
+ * File layout: a header (magic, version, wall-clock start, Lamport value at start) followed
+ * by records of {@code kind, delta-micros, ...} with every number varint-encoded:
+ * <ul>
+ *   <li>IN / OUT: connection id (+1, so a broadcast's -1 fits), then the JSON line as
+ *       length-prefixed UTF-8;</li>
+ *   <li>TICK: the Lamport value of a local clock event (START/DONE on the server).</li>
+ * </ul>
+ * The timestamp is taken under the write lock, so deltas are never negative.
+ * A torn tail from a crash just ends the read early.
+ */
+public class TrafficCapture implements Closeable {
+
+    public static final byte IN = 0, OUT = 1, TICK = 2;
+    public static final int BROADCAST = -1;
+
+    private static final int MAGIC = 0x534D4B43; // "SMKC"
+    private static final short VERSION = 1;
+
+    /** One recorded event. {@code nanos} counts from the start of the capture. */
+    public static final class Record {
+        public final byte kind;
+        public final long nanos;
+        public final int connection;
+        public final String json;
+        public final int lamport;
+
+        Record(byte kind, long nanos, int connection, String json, int lamport) {
+            this.kind = kind;
+            this.nanos = nanos;
+            this.connection = connection;
+            this.json = json;
+            this.lamport = lamport;
+        }
+    }
+
+    /** Header fields. */
+    public static final class Header {
+        public final long startEpochMs;
+        public final int startLamport;
+
+        Header(long startEpochMs, int startLamport) {
+            this.startEpochMs = startEpochMs;
+            this.startLamport = startLamport;
+        }
+    }
+
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+    private long lastMicros;
+    private long records;
+    private boolean closed;
+
+    public TrafficCapture(Path file, int startLamport) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(startLamport);
+    }
+
+    public void in(int connection, String json) { line(IN, connection, json); }
+
+    public void out(int connection, String json) { line(OUT, connection, json); }
+
+    public synchronized void tick(int lamport) {
+        if (closed) return;
+        try {
+            out.writeByte(TICK);
+            stamp();
+            writeVarint(out, lamport);
+            records++;
+        } catch (IOException ignored) {
+            // a capture that can't keep up is not worth failing the order path for
+        }
+    }
+
+    private synchronized void line(byte kind, int connection, String json) {
+        if (closed) return;
+        try {
+            byte[] b = json.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(kind);
+            stamp();
+            writeVarint(out, connection + 1);
+            writeVarint(out, b.length);
+            out.write(b);
+            records++;
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void stamp() throws IOException {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        writeVarint(out, micros - lastMicros);
+        lastMicros = micros;
+    }
+
+    public synchronized long getRecords() { return records; }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        out.close();
+    }
+
+    /** Stream a capture file; returns the header. Stops quietly at a torn tail. */
+    public static Header read(Path file, Consumer<Record> sink) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a capture file: " + file);
+            short v = in.readShort();
+            if (v != VERSION) throw new IOException("unsupported capture version " + v);
+            Header h = new Header(in.readLong(), in.readInt());
+            long micros = 0;
+            byte[] buf = new byte[512];
+            while (true) {
+                int kind = in.read();
+                if (kind < 0) break;
+                try {
+                    micros += readVarint(in);
+                    if (kind == TICK) {
+                        sink.accept(new Record(TICK, micros * 1000, 0, null, (int) readVarint(in)));
+                    } else {
+                        int conn = (int) readVarint(in) - 1;
+                        int len = (int) readVarint(in);
+                        if (len > buf.length) buf = new byte[Math.max(len, buf.length * 2)];
+                        in.readFully(buf, 0, len);
+                        sink.accept(new Record((byte) kind, micros * 1000, conn,
+                                new String(buf, 0, len, StandardCharsets.UTF_8), 0));
+                    }
+                } catch (EOFException torn) {
+                    break;
+                }
+            }
+            return h;
+        }
+    }
+
+    static void writeVarint(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarint(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("malformed varint");
+    }
+}
@@ -0,0 +1,193 @@
+package smk.server;
+
+import smk.shared.LamportClock;
+import smk.shared.Message;
+import smk.shared.Message.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a {@link TrafficCapture} file back through a {@link ServerSocketService.Listener}
+ * and checks that every order gets the Lamport value it got live.
+ *
+ * Only orders the server actually queued are replayed (BUSY refusals and resends answered
+ * from the dedupe window are skipped). Their receives and the recorded local ticks are
+ * replayed in capture order, i.e. the order their records are in the file, which is also
+ * arrival-time order. The recorded Lamport values are only used to check the result, so a
+ * live run whose clock saw events in another order than they arrived (say, two handler
+ * threads racing) shows up as mismatches instead of being replayed into agreement.
+ * Replay runs either as fast as possible (a throughput benchmark built from real traffic)
+ * or paced to the original arrival times.
+ *
+ * The listener must advance the same clock that is passed in, as the dashboard does;
+ * start from a fresh clock.
+ *
+ * Headless run: {@code java smk.server.TrafficReplay capture.smkc [--realtime]}
+ */
+public class TrafficReplay {
+
+    /** Outcome of one replay. */
+    public static final class Result {
+        public int orders;
+        public int ticks;
+        public int skipped;
+        /** Steps whose replayed Lamport value differs from the recorded one. */
+        public int mismatches;
+        /** Positions where the replayed queue order (Lamport, then client) differs. */
+        public int orderMismatches;
+        public long elapsedNanos;
+
+        public boolean matches() { return mismatches == 0 && orderMismatches == 0; }
+
+        public double ordersPerSecond() {
+            return elapsedNanos == 0 ? 0 : orders * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d orders, %d ticks, %d skipped in %.1f ms (%.0f orders/s): %s",
+                    orders, ticks, skipped, elapsedNanos / 1e6, ordersPerSecond(),
+                    matches() ? "Lamport order matches"
+                            : mismatches + " Lamport mismatches, " + orderMismatches + " queue positions differ");
+        }
+    }
+
+    /** An order receive or a local tick, with its recorded Lamport value and position in the file. */
+    private static final class Step {
+        final long seq;
+        final int lamport;
+        final Message order; // null for a tick
+        final long nanos;
+
+        Step(long seq, int lamport, Message order, long nanos) {
+            this.seq = seq;
+            this.lamport = lamport;
+            this.order = order;
+            this.nanos = nanos;
+        }
+    }
+
+    private static final int REPORTED_MISMATCHES = 10;
+
+    private TrafficReplay() {}
+
+    public static Result replay(Path file, LamportClock clock, ServerSocketService.Listener listener,
+                                boolean realtime) throws IOException {
+        Result res = new Result();
+        List<Step> steps = new ArrayList<>();
+        Map<String, TrafficCapture.Record> pendingIn = new HashMap<>();
+        Map<String, Message> pendingMsg = new HashMap<>();
+        Map<String, Long> pendingSeq = new HashMap<>();
+        Set<Integer> seenLamport = new HashSet<>();
+        long[] seq = { 0 };
+
+        TrafficCapture.Header header = TrafficCapture.read(file, r -> {
+            long at = seq[0]++;
+            if (r.kind == TrafficCapture.TICK) {
+                steps.add(new Step(at, r.lamport, null, r.nanos));
+                return;
+            }
+            Message m = Message.fromJson(r.json);
+            if (r.kind == TrafficCapture.IN) {
+                if (m.getType() == MessageType.ORDER) {
+                    String k = key(r.connection, m);
+                    pendingIn.put(k, r);
+                    pendingMsg.put(k, m);
+                    pendingSeq.put(k, at);
+                }
+                return;
+            }
+            // OUT: pair a READY/BUSY reply with the ORDER it answers on that connection
+            if (r.connection < 0 || (m.getType() != MessageType.READY && m.getType() != MessageType.BUSY)) return;
+            String k = key(r.connection, m);
+            TrafficCapture.Record in = pendingIn.remove(k);
+            Message order = pendingMsg.remove(k);
+            Long inSeq = pendingSeq.remove(k);
+            if (in == null || m.getType() == MessageType.BUSY || !seenLamport.add(m.getLamport())) {
+                res.skipped++;
+                return;
+            }
+            steps.add(new Step(inSeq, m.getLamport(), order, in.nanos));
+        });
+        // an order's step sits at its receive, which precedes later records in the file
+        steps.sort(Comparator.comparingLong(s -> s.seq));
+
+        // bring the clock to where it stood when the capture began
+        if (header.startLamport > clock.now()) clock.onReceive(header.startLamport - 1);
+
+        List<Step> orders = new ArrayList<>();
+        List<Integer> replayed = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (Step s : steps) {
+            if (realtime) {
+                long ahead = s.nanos - (System.nanoTime() - t0);
+                if (ahead > 0) LockSupport.parkNanos(ahead);
+            }
+            int got;
+            if (s.order != null) {
+                got = listener.onOrder(s.order);
+                res.orders++;
+                orders.add(s);
+                replayed.add(got);
+            } else {
+                got = clock.tick();
+                res.ticks++;
+            }
+            if (got != s.lamport && res.mismatches++ < REPORTED_MISMATCHES) {
+                listener.onLog("[REPLAY][DIFF] " + (s.order != null
+                        ? "order " + s.order.getClient() + " " + s.order.getDish() + " ts=" + s.order.getTs()
+                        : "tick") + " recorded L=" + s.lamport + " replayed L=" + got);
+            }
+        }
+        res.elapsedNanos = System.nanoTime() - t0;
+
+        // queue order as the dashboard sorts it (Lamport, then client), recorded vs replayed
+        Comparator<Integer> recorded = Comparator.<Integer>comparingInt(i -> orders.get(i).lamport)
+                .thenComparing(i -> orders.get(i).order.getClient());
+        Comparator<Integer> live = Comparator.<Integer>comparingInt(replayed::get)
+                .thenComparing(i -> orders.get(i).order.getClient());
+        List<Integer> a = indexes(orders.size()), b = indexes(orders.size());
+        a.sort(recorded);
+        b.sort(live);
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).equals(b.get(i))) res.orderMismatches++;
+        }
+        listener.onLog("[REPLAY] " + file.getFileName() + ": " + res);
+        return res;
+    }
+
+    private static String key(int connection, Message m) {
+        return connection + "|" + m.getRequestId() + "|" + m.getClient() + "#" + m.getTs();
+    }
+
+    private static List<Integer> indexes(int n) {
+        List<Integer> l = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) l.add(i);
+        return l;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: TrafficReplay <capture file> [--realtime]");
+            System.exit(2);
+        }
+        boolean realtime = Arrays.asList(args).contains("--realtime");
+        LamportClock clock = new LamportClock();
+        Result r = replay(Paths.get(args[0]), clock, new ServerSocketService.Listener() {
+            @Override
+            public int onOrder(String client, String dish, int tsClient) {
+                return clock.onReceive(tsClient);
+            }
+
+            @Override
+            public void onLog(String msg) {
+                System.out.println(msg);
+            }
+        }, realtime);
+        System.exit(r.matches() ? 0 : 1);
+    }
+}
@@ -11,16 +11,33 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
 
+import smk.shared.Dish;
 import smk.shared.LamportClock;
+import smk.shared.MenuCatalog;
+import smk.shared.OrderPriority;
 import smk.shared.OrderRow;
+import smk.server.ChefSimulator;
+import smk.server.EtaEstimator;
+import smk.server.MetricsHttpServer;
+import smk.server.OrderHistoryStore;
+import smk.server.PriorityOrderQueue;
+import smk.server.TicketAnalytics;
+import smk.server.OrderEvents;
 import smk.server.ServerSocketService;
+import smk.server.ShardRouter;
+import smk.shared.Metrics;
+import smk.shared.RateCounter;
+import smk.shared.RollingPercentiles;
+import smk.shared.Settings;
 
 import java.io.InputStream;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.PriorityQueue;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class ServerDashboardController {
@@ -43,13 +60,47 @@ public class ServerDashboardController {
     @FXML private Label lblWorkers;
     @FXML private Label lblThroughput;
     @FXML private Label lblUptime;
+    @FXML private Label lblWaitPct;
+    @FXML private Label lblCookPct;
+    @FXML private Label lblAnalytics;
 
     private final LamportClock clock = new LamportClock();
     private final ObservableList<OrderRow> data = FXCollections.observableArrayList();
     private final ObservableList<OrderRow> mirror = FXCollections.observableArrayList();
-    private final PriorityQueue<OrderRow> pq = new PriorityQueue<>();
+    private final PriorityOrderQueue pq = new PriorityOrderQueue();
     private ServerSocketService net;
-    private final Deque<Instant> completions = new ArrayDeque<>();
+    private MetricsHttpServer metricsHttp;
+    private OrderHistoryStore history;
+    private TicketAnalytics analytics;
+    private final EtaEstimator eta = new EtaEstimator(this::stationOf);
+    private final long etaPushEveryMs = (long) (Settings.get("SMK_ETA_PUSH_SEC", 5) * 1000);
+    private final long etaThresholdMs = (long) (Settings.get("SMK_ETA_THRESHOLD_SEC", 15) * 1000);
+    private long lastEtaPush;
+    private ChefSimulator simulator;
+    private boolean quitting; // Quit pressed; FX thread only
+    @FXML private ToggleButton tgSim;
+    private MenuCatalog catalog;
+    private final Set<String> staleMenus = new HashSet<>(); // client@version already warned about
+
+    private static final Metrics.Histogram FX_HOP = Metrics.histogram("smk_fx_apply_delay_seconds",
+            "Time from Platform.runLater to the order being applied on the FX thread");
+    private static final Metrics.Histogram QUEUE_WAIT = Metrics.histogram("smk_order_wait_seconds",
+            "Time an order waited in the queue before START");
+    private static final Metrics.Histogram SERVICE_TIME = Metrics.histogram("smk_order_service_seconds",
+            "Time from START to DONE");
+    private static final Metrics.Counter COMPLETED = Metrics.counter("smk_orders_completed_total",
+            "Orders finished (DONE)");
+    // completed orders: overall per-second ring (1m/5m/15m) + per-station and per-dish
+    private final RateCounter completions = new RateCounter();
+    private final RateCounter.Keyed completionsByStation = new RateCounter.Keyed();
+    private final RateCounter.Keyed completionsByDish = new RateCounter.Keyed();
+    // rolling 5 min, in millis; written on the FX thread, readable from anywhere
+    private final RollingPercentiles waitMs = new RollingPercentiles(300, 10);
+    private final RollingPercentiles cookMs = new RollingPercentiles(300, 10);
+    private final long slaTicketMs = (long) (Settings.get("SMK_SLA_TICKET_SEC", 900) * 1000);
+    // installed once on lblThroughput; updateStats() only replaces its text
+    private final Tooltip throughputTip = new Tooltip();
+    private boolean slaBreached = false;
     private Instant startTime;
 
     @FXML
@@ -57,7 +108,10 @@ public class ServerDashboardController {
         // node/demo labels
         if (lblNode != null) lblNode.setText("chef-1@localhost:5000");
         if (lblWorkers != null) lblWorkers.setText("1 / 1");
-        if (lblThroughput != null) lblThroughput.setText("~1/min");
+        if (lblThroughput != null) {
+            lblThroughput.setText("~1/min");
+            lblThroughput.setTooltip(throughputTip);
+        }
         if (lblUptime != null) lblUptime.setText("00:00:00");
 
         lblClock.setText(String.valueOf(clock.now()));
@@ -79,23 +133,125 @@ public class ServerDashboardController {
         }
 
         log("Server UI ready.");
+        if (OrderEvents.startFromEnvironment()) {
+            log("[JFR] continuous recording 'smk-orders' started");
+        }
+
+        // Same catalog file as the terminals so dish IDs line up
+        catalog = MenuCatalog.fromEnvironment(new MenuCatalog.Listener() {
+            @Override
+            public void onCatalog(MenuCatalog.Snapshot snapshot) {
+                log("[MENU] catalog v=" + snapshot.getVersion() + " active");
+            }
+            @Override
+            public void onLog(String msg) {
+                log(msg);
+            }
+        });
+        catalog.load();
+        catalog.watch();
+
+        // finished tickets go to the on-disk history for post-shift queries
+        try {
+            history = OrderHistoryStore.fromEnvironment();
+            log("[HIST] " + history.size() + " tickets on disk");
+            analytics = new TicketAnalytics(history, this::stationOf);
+            analytics.start(r -> Platform.runLater(() -> showAnalytics(r)));
+        } catch (java.io.IOException e) {
+            log("[HIST][ERR] history disabled: " + e.getMessage());
+        }
 
         // Start real socket listener so client orders arrive here
         net = new ServerSocketService(5000, clock, new ServerSocketService.Listener() {
             @Override
             public int onOrder(String client, String dish, int tsClient) {
-                // Advance Lamport once here; return value used for READY
-                int lam = clock.onReceive(tsClient);
-                Platform.runLater(() -> onOrderReceived(client, dish, tsClient, lam));
+                return onOrder(new smk.shared.Message(smk.shared.Message.MessageType.ORDER,
+                        client, dish, tsClient, 0, null));
+            }
+            @Override
+            public int onOrder(smk.shared.Message m) {
+                ShardRouter.Shard shard = net.getShards().shardFor(m.getClient());
+                int lam = onOrder(m, shard);
+                m.setLamport(lam);
+                onOrders(List.of(m), shard);
+                return lam;
+            }
+            @Override
+            public int onOrder(smk.shared.Message m, ShardRouter.Shard shard) {
+                // Advance the shard's Lamport once here; return value used for READY
+                OrderEvents.LamportAssign la = new OrderEvents.LamportAssign();
+                la.begin();
+                int lam = shard.getClock().onReceive(m.getTs());
+                la.set(m.getClient(), m.getDish(), lam);
+                la.tsClient = m.getTs();
+                la.commit();
                 return lam;
             }
             @Override
+            public void onOrders(List<smk.shared.Message> admitted, ShardRouter.Shard shard) {
+                // one FX hop per ingest batch, not per order
+                smk.shared.Message[] batch = admitted.toArray(new smk.shared.Message[0]);
+                long posted = System.nanoTime();
+                Platform.runLater(() -> {
+                    long waited = System.nanoTime() - posted;
+                    for (smk.shared.Message m : batch) {
+                        FX_HOP.observeNanos(waited);
+                        OrderEvents.FxApply fx = new OrderEvents.FxApply();
+                        fx.begin();
+                        clock.advanceTo(m.getLamport()); // merged view: START/DONE ticks come after every order seen
+                        enqueue(m.getClient(), dishOf(m), m.getTs(), m.getLamport(), m.getRequestId(),
+                                m.getPriority(), shard.getId(), m.getSession());
+                        fx.set(m.getClient(), m.getDish(), m.getLamport());
+                        fx.runLaterWaitNanos = waited;
+                        fx.commit();
+                    }
+                    queueGrew(); // once for the whole batch
+                });
+            }
+            @Override
             public void onLog(String msg) {
                 log(msg);
             }
+            @Override
+            public void onShutdown() {
+                // connections drained: make what they delivered durable before closing
+                if (history != null) history.flush();
+            }
         });
+        restorePending();
         net.start();
 
+        metricsHttp = MetricsHttpServer.fromEnvironment();
+        if (metricsHttp.start()) {
+            log("[METRICS] http://127.0.0.1:" + metricsHttp.getPort() + "/metrics");
+        }
+
+        // automatic chefs: SMK_SIM=1 turns them on at startup, the queue toggle any time
+        simulator = ChefSimulator.fromEnvironment(new ChefSimulator.Kitchen() {
+            @Override
+            public OrderRow startNext() {
+                OrderRow next = pq.peekWaiting();
+                if (next != null) startOrder(next);
+                return next;
+            }
+            @Override
+            public void finish(OrderRow order) {
+                if (pq.contains(order)) endOrder(order); // not cleared or ended by hand meanwhile
+            }
+            @Override
+            public int queueDepth() {
+                return net != null ? net.getAdmission().getDepth() : 0;
+            }
+            @Override
+            public void onLog(String msg) {
+                log(msg);
+            }
+        }, Platform::runLater);
+        if (Settings.get("SMK_SIM", 0) > 0) {
+            simulator.start();
+            if (tgSim != null) tgSim.setSelected(true);
+        }
+
         // kick off live stats (uptime + throughput)
         startTime = Instant.now();
         startStatsTicker();
@@ -103,10 +259,17 @@ public class ServerDashboardController {
 
     @FXML private void onClearQueue() {
         pq.clear();
+        eta.clear();
+        if (net != null) net.queueReset(0);
         rebuildQueue();
         log("[QUEUE] cleared");
     }
 
+    @FXML private void onToggleSim() {
+        if (tgSim != null && tgSim.isSelected()) simulator.start();
+        else simulator.close();
+    }
+
     @FXML private void onClearLogs() {
         if (txtLogs != null) txtLogs.clear();
     }
@@ -118,15 +281,67 @@ public class ServerDashboardController {
         }
     }
 
+    /**
+     * Stop in the background: the drain can take SMK_DRAIN_MS and must not hold the FX
+     * thread, since the orders admitted meanwhile reach the queue through runLater. The
+     * last step is queued behind them, so it sees every admitted order and saves what is
+     * still unfinished for the next start.
+     */
     @FXML private void onQuit() {
-        if (net != null) net.stop();
+        if (quitting) return;
+        quitting = true;
+        if (simulator != null) simulator.close();
+        Thread stopper = new Thread(() -> {
+            if (net != null) net.stop();
+            if (metricsHttp != null) metricsHttp.stop();
+            Platform.runLater(this::finishQuit);
+        }, "server-shutdown");
+        stopper.start();
+    }
+
+    private void finishQuit() {
+        if (history != null) {
+            try {
+                List<OrderRow> left = pq.toList();
+                history.savePending(left);
+                if (!left.isEmpty()) log("[HIST] " + left.size() + " unfinished order(s) saved for the next start");
+            } catch (java.io.IOException e) {
+                log("[HIST][ERR] unfinished orders not saved: " + e.getMessage());
+            }
+        }
+        if (analytics != null) analytics.close();
+        if (history != null) history.close();
         Platform.exit();
     }
 
+    /** Requeue what the last run acked but never finished, ahead of anything new. */
+    private void restorePending() {
+        if (history == null) return;
+        List<OrderRow> carried;
+        try {
+            carried = history.takePending();
+        } catch (java.io.IOException e) {
+            log("[HIST][ERR] unfinished orders not restored: " + e.getMessage());
+            return;
+        }
+        if (carried.isEmpty()) return;
+        int top = 0;
+        for (OrderRow r : carried) {
+            top = Math.max(top, r.getLamportOrder());
+            enqueue(r.getClient(), r.getDish(), r.getTsClient(), r.getLamportOrder(), r.getRequestId(),
+                    r.getPriority(), r.getShard(), r.getSession());
+        }
+        queueGrew();
+        // new orders must sort after the carried ones on every shard
+        clock.advanceTo(top);
+        for (ShardRouter.Shard sh : net.getShards().shards()) sh.getClock().advanceTo(top);
+        net.queueReset(pq.size());
+        log("[HIST] " + carried.size() + " unfinished order(s) restored");
+    }
+
     // === Core helpers ===
     private void rebuildQueue() {
-        var sorted = pq.stream().sorted().collect(Collectors.toList());
-        mirror.setAll(sorted);
+        mirror.setAll(pq.toList());
         applyFilter();
         updateHeadChip();
         updateQueueStats();
@@ -173,11 +388,42 @@ public class ServerDashboardController {
         }
         // throughput: completed per minute (rolling 60s)
         if (lblThroughput != null) {
-            Instant cutoff = Instant.now().minusSeconds(60);
-            while (!completions.isEmpty() && completions.peekFirst().isBefore(cutoff)) {
-                completions.pollFirst();
+            lblThroughput.setText("~" + completions.count(60) + "/min");
+        }
+        // rolling queue-wait / cook-time percentiles + ticket-time SLA
+        updateLatencyStats();
+        // aging: long waiters move up a class
+        long nowMs = System.currentTimeMillis();
+        List<OrderRow> aged = pq.dueForPromotion(nowMs);
+        for (OrderRow r : aged) {
+            eta.remove(r);
+            pq.promote(r);
+            eta.add(r);
+            log("[AGING] " + r.getClient() + " " + r.getDish() + " L=" + r.getLamportOrder() + " " + r.getPriority()
+                    + " -> " + OrderPriority.values()[r.getRank()]);
+        }
+        if (!aged.isEmpty()) rebuildQueue();
+        // ETAs that drifted since the last push
+        if (nowMs - lastEtaPush >= etaPushEveryMs) {
+            lastEtaPush = nowMs;
+            eta.forEachChanged(nowMs, etaThresholdMs, this::pushEta);
+        }
+        // admission: accepted vs rejected (BUSY) per second
+        if (net != null && lblThroughput != null) {
+            var adm = net.getAdmission();
+            adm.sampleRates();
+            throughputTip.setText(String.format(
+                    "done/min 1m %.1f, 5m %.1f, 15m %.1f%nstations (5m): %s%n"
+                    + "accepted %.1f/s, rejected %.1f/s (total %d / %d), queue %d/%d",
+                    completions.perMinute(60), completions.perMinute(300), completions.perMinute(900),
+                    completionsByStation.counts(300),
+                    adm.getAcceptedPerSec(), adm.getRejectedPerSec(),
+                    adm.getAcceptedTotal(), adm.getRejectedTotal(),
+                    adm.getDepth(), adm.getMaxQueueDepth()));
+            if (adm.getRejectedPerSec() > 0) {
+                log(String.format("[ADMIT] accepted %.1f/s, rejected %.1f/s",
+                        adm.getAcceptedPerSec(), adm.getRejectedPerSec()));
             }
-            lblThroughput.setText("~" + completions.size() + "/min");
         }
         // workers could be dynamic; keep placeholder "1 / 1"
         if (lblWorkers != null && lblWorkers.getText() == null) {
@@ -185,6 +431,89 @@ public class ServerDashboardController {
         }
     }
 
+    /**
+     * Dish name for an incoming ORDER, looked up by the dish ID when the terminal sent one so
+     * a renamed dish still maps to its catalog entry; older terminals only send the name.
+     * Warns once per terminal and version when it ordered from another catalog version.
+     */
+    private String dishOf(smk.shared.Message m) {
+        var snap = catalog == null ? null : catalog.current();
+        if (snap == null) return m.getDish();
+        if (m.getMenu() != null && !m.getMenu().equals(snap.getVersion())
+                && staleMenus.add(m.getClient() + "@" + m.getMenu())) {
+            log("[MENU][WARN] " + m.getClient() + " orders from catalog v=" + m.getMenu()
+                    + ", server has v=" + snap.getVersion());
+        }
+        Dish d = m.getDishId() != null ? snap.resolve(m.getDishId()) : null;
+        return d != null ? d.getName() : m.getDish();
+    }
+
+    private String stationOf(String dish) {
+        var snap = catalog == null ? null : catalog.current();
+        var d = snap == null ? null : snap.resolve(dish);
+        return d == null || d.getStation().isEmpty() ? "unassigned" : d.getStation();
+    }
+
+    /** On-disk ticket history, or null if it could not be opened. */
+    public OrderHistoryStore getHistory() { return history; }
+
+    /** Completed orders by dish over the last {@code seconds}; safe from any thread. */
+    public java.util.Map<String, Long> completionsByDish(int seconds) {
+        return completionsByDish.counts(seconds);
+    }
+
+    private void updateLatencyStats() {
+        long[] w = waitMs.percentiles(50, 95, 99);
+        long[] c = cookMs.percentiles(50, 95, 99);
+        if (lblWaitPct != null) lblWaitPct.setText(fmtPct(w));
+        if (lblCookPct != null) lblCookPct.setText(fmtPct(c));
+
+        // ticket time ~ wait + cook; p95 of each is a conservative upper estimate
+        boolean breach = w[1] >= 0 && c[1] >= 0 && w[1] + c[1] > slaTicketMs;
+        if (breach != slaBreached) {
+            slaBreached = breach;
+            for (Label l : new Label[] { lblWaitPct, lblCookPct }) {
+                if (l == null) continue;
+                if (breach) l.getStyleClass().add("stat-breach");
+                else l.getStyleClass().remove("stat-breach");
+            }
+            log(breach
+                ? "[SLA] p95 wait+cook " + fmtDur(w[1] + c[1]) + " exceeds " + fmtDur(slaTicketMs)
+                : "[SLA] back within " + fmtDur(slaTicketMs));
+        }
+    }
+
+    /** Tell the ordering terminal when a queued order should be ready. */
+    private void pushEta(OrderRow r, long etaMs) {
+        if (net == null || etaMs < 0) return;
+        var msg = new smk.shared.Message(smk.shared.Message.MessageType.ETA,
+                r.getClient(), r.getDish(), r.getTsClient(), clock.now(),
+                r.getStartedAt() != 0 ? "en preparation" : "queued");
+        msg.setRequestId(r.getRequestId());
+        msg.setSession(r.getSession());
+        msg.setEtaMs(etaMs);
+        net.broadcast(msg);
+    }
+
+    /** Background analytics finished a refresh; summary in the tile, full report in its tooltip. */
+    private void showAnalytics(TicketAnalytics.Report r) {
+        if (lblAnalytics == null) return;
+        String top = r.dishVolumes.isEmpty() ? "—" : r.dishVolumes.keySet().iterator().next();
+        lblAnalytics.setText(r.tickets + " · top " + top);
+        lblAnalytics.setTooltip(new Tooltip(r.toText()));
+    }
+
+    private static String fmtPct(long[] p) {
+        if (p[0] < 0) return "—";
+        return fmtDur(p[0]) + " / " + fmtDur(p[1]) + " / " + fmtDur(p[2]);
+    }
+
+    private static String fmtDur(long ms) {
+        if (ms < 1000) return ms + "ms";
+        long s = ms / 1000;
+        return s < 60 ? s + "s" : (s / 60) + "m" + String.format("%02d", s % 60);
+    }
+
     private void log(String s) {
         Platform.runLater(() -> {
             if (txtLogs != null) txtLogs.appendText(s + System.lineSeparator());
@@ -194,38 +523,134 @@ public class ServerDashboardController {
 
     // Hookable API for your real socket server
     public void onOrderReceived(String client, String dish, int tsFromClient, int lam) {
-        lblClock.setText(String.valueOf(lam));
-        pq.offer(new OrderRow(client, dish, tsFromClient, lam));
+        onOrderReceived(client, dish, tsFromClient, lam, 0);
+    }
+    public void onOrderReceived(String client, String dish, int tsFromClient, int lam, long requestId) {
+        onOrderReceived(client, dish, tsFromClient, lam, requestId, OrderPriority.NORMAL);
+    }
+    public void onOrderReceived(String client, String dish, int tsFromClient, int lam, long requestId,
+                                OrderPriority priority) {
+        onOrderReceived(client, dish, tsFromClient, lam, requestId, priority, 0);
+    }
+    public void onOrderReceived(String client, String dish, int tsFromClient, int lam, long requestId,
+                                OrderPriority priority, int shard) {
+        onOrderReceived(client, dish, tsFromClient, lam, requestId, priority, shard, null);
+    }
+    public void onOrderReceived(String client, String dish, int tsFromClient, int lam, long requestId,
+                                OrderPriority priority, int shard, String session) {
+        enqueue(client, dish, tsFromClient, lam, requestId, priority, shard, session);
+        queueGrew();
+    }
+
+    /** Queue one order; the caller runs {@link #queueGrew} once after a batch of these. */
+    private void enqueue(String client, String dish, int tsFromClient, int lam, long requestId,
+                         OrderPriority priority, int shard, String session) {
+        if (catalog != null && catalog.current() != null && catalog.current().resolve(dish) == null) {
+            log("[MENU][WARN] unknown dish '" + dish + "' (catalog v=" + catalog.current().getVersion() + ")");
+        }
+        lblClock.setText(String.valueOf(clock.now()));
+        OrderEvents.Enqueue enq = new OrderEvents.Enqueue();
+        enq.begin();
+        OrderRow row = new OrderRow(client, dish, tsFromClient, lam, requestId, priority, shard);
+        row.setSession(session);
+        pq.offer(row);
+        eta.add(row);
+        enq.set(client, dish, lam);
+        enq.depth = pq.size();
+        enq.commit();
+        log("[RECV] " + client + " " + dish + " ts=" + tsFromClient + " -> L=" + lam
+                + (shard != 0 ? "@" + shard : "") + (priority != OrderPriority.NORMAL ? " " + priority : ""));
+    }
+
+    /**
+     * Refresh the table once and send ETAs for the new orders, plus any order a priority
+     * arrival pushed back past the threshold; the estimator walks from the earliest change.
+     */
+    private void queueGrew() {
         rebuildQueue();
-        log("[RECV] " + client + " " + dish + " ts=" + tsFromClient + " -> L=" + lam);
+        eta.forEachChanged(System.currentTimeMillis(), etaThresholdMs, this::pushEta);
     }
     public void onStartProcessingHead() {
+        startOrder(pq.peek());
+    }
+
+    /** START one order (the head for the button, the next waiting one for a simulated chef). */
+    private void startOrder(OrderRow head) {
         int lam = clock.tick();
         lblClock.setText(String.valueOf(lam));
-        var head = pq.peek();
+        if (head != null && head.getStartedNanos() == 0) {
+            head.setStartedNanos(System.nanoTime());
+            head.setStartedAt(System.currentTimeMillis());
+            // pin the head so a later RUSH can't take its place mid-cook
+            eta.remove(head);
+            pq.start(head);
+            eta.add(head);
+            eta.started(head, head.getStartedAt());
+            waitMs.record(head.getStartedAt() - head.getReceivedAt());
+            lvQueue.refresh(); // show the start stamp on the head card
+            long wait = head.getStartedNanos() - head.getQueuedNanos();
+            QUEUE_WAIT.observeNanos(wait);
+            OrderEvents.Start ev = new OrderEvents.Start();
+            ev.set(head.getClient(), head.getDish(), head.getLamportOrder());
+            ev.waitNanos = wait;
+            ev.commit();
+        }
         log("[START] " + (head != null ? head.getClient() + " " + head.getDish() : "(empty)")
             + " S(L)=" + lam);
         if (net != null && head != null) {
-            net.broadcast(new smk.shared.Message(smk.shared.Message.MessageType.START,
-                    head.getClient(), head.getDish(), head.getTsClient(), lam, "en preparation"));
+            var msg = new smk.shared.Message(smk.shared.Message.MessageType.START,
+                    head.getClient(), head.getDish(), head.getTsClient(), lam, "en preparation");
+            msg.setRequestId(head.getRequestId());
+            msg.setSession(head.getSession());
+            net.broadcast(msg);
         }
     }
     public void onEndProcessingHead() {
-        OrderRow done = pq.isEmpty() ? null : pq.poll();
+        endOrder(pq.peek());
+    }
+
+    /** DONE one order and take it off the queue. */
+    private void endOrder(OrderRow done) {
+        if (done != null) pq.remove(done);
         int lam = clock.tick();
         lblClock.setText(String.valueOf(lam));
         rebuildQueue();
         log("[END] S(L)=" + lam);
         if (net != null && done != null) {
-            net.broadcast(new smk.shared.Message(smk.shared.Message.MessageType.DONE,
-                    done.getClient(), done.getDish(), done.getTsClient(), lam, "en livraison"));
+            var msg = new smk.shared.Message(smk.shared.Message.MessageType.DONE,
+                    done.getClient(), done.getDish(), done.getTsClient(), lam, "en livraison");
+            msg.setRequestId(done.getRequestId());
+            msg.setSession(done.getSession());
+            net.broadcast(msg);
         }
         // track completions for throughput
         if (done != null) {
-            completions.addLast(Instant.now());
+            completions.mark();
+            completionsByDish.mark(done.getDish());
+            completionsByStation.mark(stationOf(done.getDish()));
+            COMPLETED.inc();
+            done.setDoneAt(System.currentTimeMillis());
+            eta.finished(done, done.getStartedAt() != 0 ? done.getDoneAt() - done.getStartedAt() : -1);
+            if (history != null) history.append(done);
+            if (done.getStartedAt() != 0) cookMs.record(done.getDoneAt() - done.getStartedAt());
+            long service = done.getStartedNanos() != 0 ? System.nanoTime() - done.getStartedNanos() : 0;
+            if (service != 0) SERVICE_TIME.observeNanos(service);
+            OrderEvents.Done ev = new OrderEvents.Done();
+            ev.set(done.getClient(), done.getDish(), done.getLamportOrder());
+            ev.serviceNanos = service;
+            ev.commit();
+            if (net != null) net.orderFinished();
         }
     }
 
+    private static final DateTimeFormatter CLOCK_FMT =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private String etaSuffix(OrderRow r) {
+        long at = eta.etaOf(r, System.currentTimeMillis());
+        return at < 0 ? "" : " · ETA " + CLOCK_FMT.format(Instant.ofEpochMilli(at));
+    }
+
     // === Custom ListCell for Lamport queue ===
     private class LamportCell extends ListCell<OrderRow> {
         private final HBox root = new HBox(12);
@@ -239,6 +664,7 @@ public class ServerDashboardController {
         private final HBox metaRow = new HBox(8);
         private final Label tsChip = new Label();
         private final Label lamChip = new Label();
+        private final Label timeChip = new Label();
         private final Pane grow = new Pane();
         private final HBox actions = new HBox(8);
         private final Button btnStart = new Button("Start");
@@ -260,7 +686,8 @@ public class ServerDashboardController {
 
             tsChip.getStyleClass().addAll("chip", "chip-soft");
             lamChip.getStyleClass().addAll("chip", "chip-strong");
-            metaRow.getChildren().addAll(tsChip, lamChip);
+            timeChip.getStyleClass().addAll("chip", "chip-soft");
+            metaRow.getChildren().addAll(tsChip, lamChip, timeChip);
 
             main.getChildren().addAll(titleRow, metaRow);
 
@@ -298,17 +725,26 @@ public class ServerDashboardController {
             // avatar = client initials (or load image if you have one)
             avatar.setText(r.getClient());
             avatarWrap.getStyleClass().removeAll("prio-1","prio-2","prio-3");
-            // simple priority color by Lamport mod 3 (purely visual)
-            switch (Math.floorMod(r.getLamportOrder(), 3)) {
-                case 0 -> avatarWrap.getStyleClass().add("prio-1");
-                case 1 -> avatarWrap.getStyleClass().add("prio-2");
+            // priority color by ordered class
+            switch (r.getPriority()) {
+                case RUSH -> avatarWrap.getStyleClass().add("prio-1");
+                case VIP -> avatarWrap.getStyleClass().add("prio-2");
                 default -> avatarWrap.getStyleClass().add("prio-3");
             }
 
             dish.setText(r.getDish());
             client.setText("• " + r.getClient());
             tsChip.setText("tsClient=" + r.getTsClient());
-            lamChip.setText("L=" + r.getLamportOrder());
+            lamChip.setText("L=" + r.getLamportOrder() + (r.getShard() != 0 ? "@" + r.getShard() : "")
+                    + (r.getPriority() != OrderPriority.NORMAL ? " · " + r.getPriority() : "")
+                    + (r.getRank() >= 0 && r.getRank() < r.getPriority().ordinal()
+                        ? " ↑" + OrderPriority.values()[r.getRank()] : ""));
+            timeChip.setText("recv " + CLOCK_FMT.format(Instant.ofEpochMilli(r.getReceivedAt()))
+                    + (r.getStartedAt() != 0
+                        ? " → start " + CLOCK_FMT.format(Instant.ofEpochMilli(r.getStartedAt()))
+                          + " (waited " + fmtDur(r.getStartedAt() - r.getReceivedAt()) + ")"
+                        : "")
+                    + etaSuffix(r));
 
             setGraphic(root);
         }
@@ -0,0 +1,60 @@
+package smk.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/** One catalog entry. Immutable so catalog snapshots can be shared across threads. */
+public class Dish {
+    public static final String TAG_VEGAN = "vegan";
+    public static final String TAG_POPULAR = "popular";
+
+    private final String id;
+    private final String name;
+    private final String stem; // image filename stem under /img
+    private final int price;
+    private final boolean vegan;
+    private final boolean popular;
+    private final String station;
+
+    public Dish(String id, String name, String stem, int price, boolean vegan, boolean popular, String station) {
+        this.id = id;
+        this.name = name;
+        this.stem = stem;
+        this.price = price;
+        this.vegan = vegan;
+        this.popular = popular;
+        this.station = station;
+    }
+
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public String getStem() { return stem; }
+    public int getPrice() { return price; }
+    public boolean isVegan() { return vegan; }
+    public boolean isPopular() { return popular; }
+    public String getStation() { return station; }
+
+    public List<String> tags() {
+        List<String> t = new ArrayList<>(2);
+        if (vegan) t.add(TAG_VEGAN);
+        if (popular) t.add(TAG_POPULAR);
+        return t;
+    }
+
+    /** Value equality, so a reload can tell which dishes actually changed. */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Dish d)) return false;
+        return price == d.price && vegan == d.vegan && popular == d.popular
+                && Objects.equals(id, d.id) && Objects.equals(name, d.name)
+                && Objects.equals(stem, d.stem) && Objects.equals(station, d.station);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(id, name, price); }
+
+    @Override
+    public String toString() { return id + "(" + name + ")"; }
+}
@@ -1,8 +1,17 @@
 package smk.shared;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 public class LamportClock {
+    private static final Metrics.Counter TICKS =
+            Metrics.counter("smk_lamport_events_total", "Lamport clock advances", "kind=\"tick\"");
+    private static final Metrics.Counter RECEIVES =
+            Metrics.counter("smk_lamport_events_total", "Lamport clock advances", "kind=\"receive\"");
+    private static final Metrics.Counter CAS_RETRIES =
+            Metrics.counter("smk_lamport_cas_retries_total", "Failed compareAndSet attempts in onReceive");
+
     private final AtomicInteger time = new AtomicInteger(0);
+    private volatile IntConsumer tickObserver;
 
     public int now() {
         return time.get();
@@ -10,17 +19,36 @@ public class LamportClock {
 
     // local event
     public int tick() {
-        return time.incrementAndGet();
+        TICKS.inc();
+        int t = time.incrementAndGet();
+        IntConsumer o = tickObserver;
+        if (o != null) o.accept(t);
+        return t;
+    }
+
+    /** Sees the value of every local tick (traffic capture); null to remove. */
+    public void setTickObserver(IntConsumer observer) {
+        this.tickObserver = observer;
     }
 
     // on receive(remoteTs)
     public int onReceive(int remoteTs) {
         // L = max(L, remoteTs) + 1
+        RECEIVES.inc();
         int cur, next;
-        do {
+        while (true) {
             cur = time.get();
             next = Math.max(cur, remoteTs) + 1;
-        } while (!time.compareAndSet(cur, next));
-        return next;
+            if (time.compareAndSet(cur, next)) return next;
+            CAS_RETRIES.inc();
+        }
+    }
+
+    /**
+     * Catch up to a value another clock of this process assigned (a sibling shard), without
+     * counting an event: afterwards every tick here is later than it.
+     */
+    public void advanceTo(int t) {
+        time.accumulateAndGet(t, Math::max);
     }
 }
@@ -0,0 +1,277 @@
+package smk.shared;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The line protocol over a blocking socket channel (plain or {@link TlsChannel}), for both ends: UTF-8 always, a sized
+ * read buffer, a cap on line length, and coalesced writes.
+ *
+ * Reading: one thread calls {@link #readLine}. A line longer than SMK_MAX_LINE bytes
+ * (default 64 KiB) fails the read instead of growing a buffer for whatever the peer sends.
+ *
+ * Writing: any thread may {@link #send} a frame (see {@link #frame}). Frames go into a
+ * queue drained by the channel's own writer thread with gathering writes, so a caller
+ * never blocks on the socket: a peer that stops reading only stalls its writer, and its
+ * queue fills up until {@link #send} refuses more. Nagle-style coalescing:
+ * a frame is written at once unless more output is known to be coming, i.e. the reader
+ * still has buffered requests to answer or a caller has {@link #cork corked} the channel
+ * for a batch. Then frames wait for the reader to run dry (or {@link #uncork}), for
+ * SMK_COALESCE_BYTES (default 1400, about one TCP segment) to pile up, or for
+ * SMK_FLUSH_DELAY_US (default 200), whichever comes first. A burst of requests is answered
+ * in a few large writes, a lone request/reply pays no delay, and no frame waits longer
+ * than the bound. A write error from a deferred flush closes the channel, which the
+ * reading thread sees as a failed read.
+ */
+public final class LineChannel implements Closeable {
+
+    private static final int BUFFER = (int) Settings.get("SMK_IO_BUFFER", 8192);
+    private static final int MAX_LINE = (int) Settings.get("SMK_MAX_LINE", 64 * 1024);
+    private static final long DELAY_NANOS = (long) (Settings.get("SMK_FLUSH_DELAY_US", 200) * 1000);
+    private static final int COALESCE_BYTES = (int) Settings.get("SMK_COALESCE_BYTES", 1400);
+    private static final int GATHER_MAX = 64;
+
+    private static final Metrics.Counter WRITES = Metrics.counter("smk_net_writes_total",
+            "Socket write calls (one per coalesced batch)");
+    private static final Metrics.Counter FRAMES = Metrics.counter("smk_net_frames_total",
+            "Frames queued for writing");
+
+    private final ByteChannel channel;
+    private final GatheringByteChannel gather;
+    private final ScheduledExecutorService flusher;
+    private final int maxQueued;
+
+    // reading: owned by the reader thread
+    private final ByteBuffer rbuf = ByteBuffer.allocate(BUFFER).flip();
+    private byte[] partial = new byte[256];
+    private int partialLen;
+    private long bytesRead;
+
+    // writing
+    private final ConcurrentLinkedQueue<ByteBuffer> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger queuedBytes = new AtomicInteger();
+    private final AtomicBoolean flushWanted = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ByteBuffer[] batch = new ByteBuffer[GATHER_MAX]; // writer thread only
+    private final AtomicInteger holds = new AtomicInteger(); // corks, plus one while the reader has input
+    private boolean readerHold; // reader thread only
+    private final AtomicBoolean writerStarted = new AtomicBoolean();
+    private volatile Thread writer;
+    private volatile boolean outputShutdown; // half-close once the queue is written
+    private volatile boolean closed;
+
+    /**
+     * @param flusher runs deferred flushes; shared by all channels of a process
+     * @param maxQueued frames a peer may have waiting before {@link #send} refuses more
+     */
+    public <C extends ByteChannel & GatheringByteChannel> LineChannel(C channel, ScheduledExecutorService flusher, int maxQueued) {
+        this.channel = channel;
+        this.gather = channel;
+        this.flusher = flusher;
+        this.maxQueued = maxQueued;
+    }
+
+    /** One protocol line as UTF-8 bytes, read-only so recipients can share it. */
+    public static ByteBuffer frame(String line) {
+        return ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+
+    // --- reading -----------------------------------------------------------------
+
+    /** Next line without its terminator, or null at end of stream. */
+    public String readLine() throws IOException {
+        while (true) {
+            byte[] a = rbuf.array();
+            int start = rbuf.position(), end = rbuf.limit();
+            for (int i = start; i < end; i++) {
+                if (a[i] != '\n') continue;
+                rbuf.position(i + 1);
+                holdWhileBuffered(i + 1 < end);
+                if (partialLen == 0) return decode(a, start, i - start);
+                append(a, start, i - start);
+                String line = decode(partial, 0, partialLen);
+                partialLen = 0;
+                return line;
+            }
+            append(a, start, end - start);
+            holdWhileBuffered(false); // about to block: answers so far go out now
+            rbuf.clear();
+            int n = channel.read(rbuf);
+            rbuf.flip();
+            if (n > 0) bytesRead += n;
+            if (n < 0) {
+                if (partialLen == 0) return null;
+                String line = decode(partial, 0, partialLen); // last line without '\n'
+                partialLen = 0;
+                return line;
+            }
+        }
+    }
+
+    /** Bytes read off the channel so far, terminators included; reader thread only. */
+    public long bytesRead() { return bytesRead; }
+
+    /** More requests already buffered means more replies coming: hold writes until they are answered. */
+    private void holdWhileBuffered(boolean more) {
+        if (more == readerHold) return;
+        readerHold = more;
+        if (more) holds.incrementAndGet();
+        else if (holds.decrementAndGet() == 0) flush();
+    }
+
+    private void append(byte[] a, int off, int len) throws IOException {
+        if (len == 0) return;
+        if (partialLen + len > MAX_LINE) {
+            partialLen = 0;
+            throw new IOException("line longer than " + MAX_LINE + " bytes");
+        }
+        if (partialLen + len > partial.length) {
+            partial = Arrays.copyOf(partial, Math.min(MAX_LINE, Math.max(partial.length * 2, partialLen + len)));
+        }
+        System.arraycopy(a, off, partial, partialLen, len);
+        partialLen += len;
+    }
+
+    private static String decode(byte[] a, int off, int len) throws IOException {
+        if (len > MAX_LINE) throw new IOException("line longer than " + MAX_LINE + " bytes");
+        if (len > 0 && a[off + len - 1] == '\r') len--;
+        return new String(a, off, len, StandardCharsets.UTF_8);
+    }
+
+    // --- writing -----------------------------------------------------------------
+
+    /**
+     * Queue a frame; written soon, or with the rest of the batch if the channel is held.
+     * Never blocks. The buffer must not be modified afterwards (pass a duplicate of a shared
+     * frame). Returns false if the peer already has too many frames waiting or the channel
+     * is closed.
+     */
+    public boolean send(ByteBuffer frame) {
+        if (closed) return false;
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return false;
+        }
+        FRAMES.inc();
+        int bytes = queuedBytes.addAndGet(frame.remaining());
+        outbox.add(frame);
+        if (holds.get() == 0 || DELAY_NANOS <= 0 || bytes >= COALESCE_BYTES) {
+            flush();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.schedule(this::deferredFlush, DELAY_NANOS, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+        return true;
+    }
+
+    private void deferredFlush() {
+        flushScheduled.set(false);
+        flush();
+    }
+
+    /** Have the writer thread write everything queued so far; returns at once. */
+    public void flush() {
+        flushWanted.set(true);
+        LockSupport.unpark(writer());
+    }
+
+    private Thread writer() {
+        if (writerStarted.compareAndSet(false, true)) {
+            Thread t = new Thread(this::writeLoop, "line-writer");
+            t.setDaemon(true);
+            writer = t;
+            t.start();
+        }
+        Thread t;
+        while ((t = writer) == null) Thread.onSpinWait(); // the starting thread is about to set it
+        return t;
+    }
+
+    /**
+     * Writer thread: drain the queue with gathering writes whenever asked to, then park.
+     * A write error closes the channel, which the reading thread sees as a failed read.
+     */
+    private void writeLoop() {
+        try {
+            while (!closed) {
+                if (!flushWanted.getAndSet(false)) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                int n;
+                while ((n = drainTo(batch)) > 0) {
+                    int bytes = 0;
+                    for (int i = 0; i < n; i++) bytes += batch[i].remaining();
+                    while (batch[n - 1].hasRemaining()) {
+                        gather.write(batch, 0, n);
+                        WRITES.inc();
+                    }
+                    Arrays.fill(batch, 0, n, null);
+                    queued.addAndGet(-n);
+                    queuedBytes.addAndGet(-bytes);
+                }
+                if (outputShutdown && outbox.isEmpty()) {
+                    if (channel instanceof TlsChannel t) t.shutdownOutput();
+                    else if (channel instanceof SocketChannel sc) sc.shutdownOutput();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private int drainTo(ByteBuffer[] into) {
+        int n = 0;
+        ByteBuffer b;
+        while (n < into.length && (b = outbox.poll()) != null) into[n++] = b;
+        return n;
+    }
+
+    /** Hold writes for a batch of sends; each cork needs an {@link #uncork}. */
+    public void cork() { holds.incrementAndGet(); }
+
+    /** End a batch; the writer picks it up once nothing holds the channel any more. */
+    public void uncork() {
+        if (holds.decrementAndGet() == 0) flush();
+    }
+
+    /**
+     * Half-close: once what is queued is written, send end-of-stream (after close_notify
+     * for TLS). The peer reads everything up to here and sees EOF; we can still read.
+     * Returns at once; send nothing after this.
+     */
+    public void shutdownOutput() {
+        outputShutdown = true;
+        flush();
+    }
+
+    /** Frames waiting to be written. */
+    public int queued() { return queued.get(); }
+
+    @Override
+    public void close() {
+        closed = true;
+        try { channel.close(); } catch (IOException ignored) {}
+        Thread t = writer;
+        if (t != null) LockSupport.unpark(t);
+    }
+}
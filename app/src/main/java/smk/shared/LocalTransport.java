@@ -0,0 +1,56 @@
+package smk.shared;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Unix-domain socket transport for a client and server on the same machine.
+ * Same line protocol as TCP, but no TCP/IP stack on the path: lower latency and less CPU
+ * per message. The server listens on both; a client whose host is local uses the socket
+ * file when it exists and falls back to TCP otherwise.
+ *
+ * SMK_UNIX=0 turns it off on either side. SMK_UNIX_SOCKET overrides the socket path
+ * (default: &lt;tmpdir&gt;/smk-&lt;port&gt;.sock).
+ */
+public final class LocalTransport {
+
+    private LocalTransport() {}
+
+    public static boolean enabled() {
+        return Settings.flag("SMK_UNIX", true);
+    }
+
+    public static Path socketPath(int port) {
+        String p = Settings.get("SMK_UNIX_SOCKET");
+        if (p != null) return Paths.get(p);
+        return Paths.get(System.getProperty("java.io.tmpdir"), "smk-" + port + ".sock");
+    }
+
+    /** True if host names this machine (loopback, or one of our interface addresses). */
+    public static boolean isLocalHost(String host) {
+        if (host == null || host.isBlank() || host.equalsIgnoreCase("localhost")) return true;
+        try {
+            InetAddress a = InetAddress.getByName(host);
+            return a.isLoopbackAddress() || a.isAnyLocalAddress() || NetworkInterface.getByInetAddress(a) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static SocketChannel connect(Path socket) throws IOException {
+        SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            ch.connect(UnixDomainSocketAddress.of(socket));
+            return ch;
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package smk.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Menu catalog loaded from a small CSV file:
+ * <pre>
+ *   # id,name,stem,price,tags,station
+ *   pizza,Pizza,pizza,18,vegan|popular,oven
+ * </pre>
+ * Files are read in one go into a byte buffer and parsed line by line straight
+ * from it, so large catalogs don't go through a Reader or a full String copy.
+ * {@link #watch()} reloads on change and notifies the listener with a new
+ * {@link Snapshot}; the snapshot version is a CRC of the file so client and
+ * server can tell whether they agree on dish IDs.
+ */
+public class MenuCatalog {
+
+    public interface Listener {
+        void onCatalog(Snapshot snapshot);
+        void onLog(String msg);
+    }
+
+    /** Immutable view of one catalog version. */
+    public static final class Snapshot {
+        private final String version;
+        private final List<Dish> dishes;
+        private final Map<String, Dish> byId;
+        private final Map<String, Dish> byName;
+
+        Snapshot(String version, List<Dish> dishes) {
+            this.version = version;
+            this.dishes = Collections.unmodifiableList(dishes);
+            Map<String, Dish> ids = new HashMap<>(dishes.size() * 2);
+            Map<String, Dish> names = new HashMap<>(dishes.size() * 2);
+            for (Dish d : dishes) {
+                ids.put(d.getId(), d);
+                names.putIfAbsent(d.getName().toLowerCase(), d);
+            }
+            this.byId = ids;
+            this.byName = names;
+        }
+
+        public String getVersion() { return version; }
+        public List<Dish> getDishes() { return dishes; }
+        public Dish byId(String id) { return byId.get(id); }
+
+        /** Look up by ID first, then by display name (older clients send names). */
+        public Dish resolve(String idOrName) {
+            if (idOrName == null) return null;
+            Dish d = byId.get(idOrName);
+            return d != null ? d : byName.get(idOrName.toLowerCase());
+        }
+    }
+
+    public static final String DEFAULT_RESOURCE = "/menu/catalog.csv";
+    /** Larger files are refused rather than copied onto the heap; a menu is a few KB. */
+    private static final long MAX_FILE_BYTES = 16L << 20;
+
+    private final Path file; // null => bundled resource only
+    private final Listener listener;
+    private volatile Snapshot current;
+    private volatile boolean watching = false;
+    private Thread watchThread;
+
+    public MenuCatalog(Path file, Listener listener) {
+        this.file = file;
+        this.listener = listener;
+    }
+
+    /**
+     * Catalog for SMK_MENU_FILE (system property or env), or the bundled default
+     * when it is not set.
+     */
+    public static MenuCatalog fromEnvironment(Listener listener) {
+        String f = Settings.get("SMK_MENU_FILE");
+        return new MenuCatalog(f == null ? null : Paths.get(f), listener);
+    }
+
+    public Snapshot current() { return current; }
+
+    /** Load (or reload) the catalog. Keeps the previous snapshot if the file can't be read. */
+    public Snapshot load() {
+        long t0 = System.nanoTime();
+        try {
+            ByteBuffer buf = file != null ? read(file) : bundled();
+            Snapshot s = parse(buf);
+            Snapshot prev = current;
+            current = s;
+            long us = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - t0);
+            log("[MENU] Loaded " + s.getDishes().size() + " dishes v=" + s.getVersion()
+                    + " in " + us + "us from " + (file != null ? file : DEFAULT_RESOURCE));
+            if (listener != null && (prev == null || !prev.getVersion().equals(s.getVersion()))) {
+                listener.onCatalog(s);
+            }
+        } catch (IOException | RuntimeException e) {
+            log("[MENU][ERR] " + e.getMessage() + ", keeping v="
+                    + (current == null ? "none" : current.getVersion()));
+        }
+        return current;
+    }
+
+    /** Start a daemon thread that reloads the file whenever it changes. No-op for the bundled catalog. */
+    public void watch() {
+        if (file == null || watching) return;
+        watching = true;
+        watchThread = new Thread(this::watchLoop, "menu-catalog-watch");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    public void stopWatching() {
+        watching = false;
+        if (watchThread != null) watchThread.interrupt();
+    }
+
+    private void watchLoop() {
+        Path dir = file.toAbsolutePath().getParent();
+        Path name = file.getFileName();
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+            dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (watching) {
+                WatchKey key = ws.take();
+                boolean touched = false;
+                for (WatchEvent<?> ev : key.pollEvents()) {
+                    if (name.equals(ev.context())) touched = true;
+                }
+                key.reset();
+                if (touched) {
+                    // editors often write in several steps; let the file settle
+                    Thread.sleep(150);
+                    load();
+                }
+            }
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log("[MENU][ERR] watch " + e.getMessage());
+        } finally {
+            watching = false;
+        }
+    }
+
+    /**
+     * Copy the file into a heap buffer of the size it has now. A mapping would fault if an
+     * editor truncated the file under it; a copy that comes up short is just a failed load,
+     * and the editor's next write reloads.
+     */
+    private static ByteBuffer read(Path p) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size > MAX_FILE_BYTES) throw new IOException(p + " is over " + MAX_FILE_BYTES + " bytes");
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) throw new IOException(p + " changed while reading");
+            }
+            return buf.flip();
+        }
+    }
+
+    private ByteBuffer bundled() throws IOException {
+        try (InputStream is = MenuCatalog.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (is == null) throw new IOException("missing " + DEFAULT_RESOURCE);
+            return ByteBuffer.wrap(is.readAllBytes());
+        }
+    }
+
+    /** Parse directly from the buffer, one line at a time, without regex or per-line Readers. */
+    static Snapshot parse(ByteBuffer buf) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate());
+
+        List<Dish> dishes = new ArrayList<>();
+        byte[] line = new byte[256];
+        int[] commas = new int[5];
+        int limit = buf.limit();
+        int pos = buf.position();
+        while (pos < limit) {
+            int end = pos;
+            while (end < limit && buf.get(end) != '\n') end++;
+            int len = end - pos;
+            if (len > line.length) line = new byte[Math.max(len, line.length * 2)];
+            buf.get(pos, line, 0, len);
+            pos = end + 1;
+            if (len > 0 && line[len - 1] == '\r') len--;
+            if (len == 0 || line[0] == '#') continue;
+            Dish d = parseLine(line, len, commas);
+            if (d != null) dishes.add(d);
+        }
+        return new Snapshot(Long.toHexString(crc.getValue()), dishes);
+    }
+
+    private static Dish parseLine(byte[] b, int len, int[] commas) {
+        int n = 0;
+        for (int i = 0; i < len && n < commas.length; i++) {
+            if (b[i] == ',') commas[n++] = i;
+        }
+        if (n < 3) return null;
+        String id = field(b, 0, commas[0]);
+        if (id.isEmpty()) return null;
+        int price = parsePrice(b, commas[2] + 1, n > 3 ? commas[3] : len);
+        if (price < 0) return null;
+
+        boolean vegan = false, popular = false;
+        if (n > 3) {
+            String tags = field(b, commas[3] + 1, n > 4 ? commas[4] : len).toLowerCase();
+            for (String t : tags.split("\\|")) {
+                String tag = t.trim();
+                if (tag.equals(Dish.TAG_VEGAN)) vegan = true;
+                else if (tag.equals(Dish.TAG_POPULAR)) popular = true;
+            }
+        }
+        String station = n > 4 ? field(b, commas[4] + 1, len) : "";
+        return new Dish(id, field(b, commas[0] + 1, commas[1]), field(b, commas[1] + 1, commas[2]),
+                price, vegan, popular, station);
+    }
+
+    private static String field(byte[] b, int from, int to) {
+        while (from < to && b[from] == ' ') from++;
+        while (to > from && b[to - 1] == ' ') to--;
+        return new String(b, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /** Non-negative integer, or -1 if the field is not a number. */
+    private static int parsePrice(byte[] b, int from, int to) {
+        int v = 0, digits = 0;
+        for (int i = from; i < to; i++) {
+            byte c = b[i];
+            if (c == ' ') continue;
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+            digits++;
+        }
+        return digits == 0 ? -1 : v;
+    }
+
+    private void log(String msg) {
+        if (listener != null) listener.onLog(msg);
+    }
+}
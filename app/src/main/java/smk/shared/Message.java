@@ -6,7 +6,7 @@ package smk.shared;
  * without bringing an external JSON library.
  */
 public class Message {
-    public enum MessageType { REQUEST, REPLY, RELEASE, ORDER, READY, START, DONE, LOG }
+    public enum MessageType { REQUEST, REPLY, RELEASE, ORDER, READY, START, DONE, LOG, BUSY, PING, PONG, ETA, SHUTDOWN }
 
     private MessageType type;
     private String client;
@@ -14,6 +14,13 @@ public class Message {
     private int ts;
     private int lamport;
     private String text;
+    private String session; // sender session id, lets the server drop resent duplicates
+    private long requestId; // client-assigned id echoed on READY/START/DONE, 0 = none
+    private int retryAfterMs; // BUSY only: when the client may resend
+    private long etaMs; // ETA only: projected ready time, epoch millis
+    private OrderPriority priority; // ORDER: priority class, null = NORMAL
+    private String dishId; // ORDER: catalog dish id; dish stays the display name for older peers
+    private String menu; // ORDER: catalog version the client picked from
 
     public Message() {}
 
@@ -32,6 +39,13 @@ public class Message {
     public int getTs() { return ts; }
     public int getLamport() { return lamport; }
     public String getText() { return text; }
+    public String getSession() { return session; }
+    public long getRequestId() { return requestId; }
+    public int getRetryAfterMs() { return retryAfterMs; }
+    public long getEtaMs() { return etaMs; }
+    public OrderPriority getPriority() { return priority == null ? OrderPriority.NORMAL : priority; }
+    public String getDishId() { return dishId; }
+    public String getMenu() { return menu; }
 
     public void setType(MessageType type) { this.type = type; }
     public void setClient(String client) { this.client = client; }
@@ -39,6 +53,13 @@ public class Message {
     public void setTs(int ts) { this.ts = ts; }
     public void setLamport(int lamport) { this.lamport = lamport; }
     public void setText(String text) { this.text = text; }
+    public void setSession(String session) { this.session = session; }
+    public void setRequestId(long requestId) { this.requestId = requestId; }
+    public void setRetryAfterMs(int retryAfterMs) { this.retryAfterMs = retryAfterMs; }
+    public void setEtaMs(long etaMs) { this.etaMs = etaMs; }
+    public void setPriority(OrderPriority priority) { this.priority = priority; }
+    public void setDishId(String dishId) { this.dishId = dishId; }
+    public void setMenu(String menu) { this.menu = menu; }
 
     /** Serialize to a tiny JSON string; fields not used are omitted. */
     public String toJson() {
@@ -50,6 +71,13 @@ public class Message {
         if (ts != 0) append(sb, "ts", ts);
         if (lamport != 0) append(sb, "lamport", lamport);
         if (text != null) append(sb, "text", text);
+        if (session != null) append(sb, "session", session);
+        if (requestId != 0) append(sb, "req", requestId);
+        if (retryAfterMs != 0) append(sb, "retry", retryAfterMs);
+        if (etaMs != 0) append(sb, "eta", etaMs);
+        if (priority != null && priority != OrderPriority.NORMAL) append(sb, "prio", priority.name());
+        if (dishId != null) append(sb, "dishId", dishId);
+        if (menu != null) append(sb, "menu", menu);
         // remove last comma if present
         if (sb.charAt(sb.length() - 1) == ',') sb.deleteCharAt(sb.length() - 1);
         sb.append('}');
@@ -61,7 +89,7 @@ public class Message {
           .append('"').append(escape(val)).append('"').append(',');
     }
 
-    private static void append(StringBuilder sb, String key, int val) {
+    private static void append(StringBuilder sb, String key, long val) {
         sb.append('"').append(key).append('"').append(':').append(val).append(',');
     }
 
@@ -94,6 +122,13 @@ public class Message {
                 case "ts" -> m.ts = parseInt(valRaw);
                 case "lamport" -> m.lamport = parseInt(valRaw);
                 case "text" -> m.text = strip(valRaw);
+                case "session" -> m.session = strip(valRaw);
+                case "req" -> m.requestId = parseLong(valRaw);
+                case "retry" -> m.retryAfterMs = parseInt(valRaw);
+                case "eta" -> m.etaMs = parseLong(valRaw);
+                case "prio" -> m.priority = OrderPriority.parse(strip(valRaw));
+                case "dishId" -> m.dishId = strip(valRaw);
+                case "menu" -> m.menu = strip(valRaw);
                 default -> {}
             }
         }
@@ -112,4 +147,9 @@ public class Message {
         try { return Integer.parseInt(s.replaceAll("[^0-9-]", "")); }
         catch (Exception e) { return 0; }
     }
+
+    private static long parseLong(String s) {
+        try { return Long.parseLong(s.replaceAll("[^0-9-]", "")); }
+        catch (Exception e) { return 0; }
+    }
 }
@@ -0,0 +1,147 @@
+package smk.shared;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Tiny process-wide metrics registry: counters, gauges and histograms, rendered in the
+ * Prometheus text format. Counters and histogram buckets are LongAdders (striped per CPU),
+ * so hot paths only pay an uncontended add. Look metrics up once and keep the reference;
+ * the lookup itself goes through a map.
+ */
+public final class Metrics {
+
+    private Metrics() {}
+
+    /** Monotonic counter. */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+        public void inc() { value.increment(); }
+        public void add(long n) { value.add(n); }
+        public long get() { return value.sum(); }
+    }
+
+    /** Settable gauge, or one that reads a supplier at scrape time. */
+    public static final class Gauge {
+        private final AtomicLong value = new AtomicLong();
+        private volatile LongSupplier supplier;
+        public void set(long v) { value.set(v); }
+        public void inc() { value.incrementAndGet(); }
+        public void dec() { value.decrementAndGet(); }
+        public void bind(LongSupplier s) { supplier = s; }
+        public long get() {
+            LongSupplier s = supplier;
+            return s != null ? s.getAsLong() : value.get();
+        }
+    }
+
+    /** Latency histogram with fixed upper bounds in seconds. */
+    public static final class Histogram {
+        private final double[] bounds;
+        private final LongAdder[] buckets; // non-cumulative; last = +Inf
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        public void observeNanos(long nanos) {
+            double s = nanos / 1e9;
+            int i = 0;
+            while (i < bounds.length && s > bounds[i]) i++;
+            buckets[i].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        public long getCount() { return count.sum(); }
+    }
+
+    /** Default latency buckets: 100us .. 30min, roughly x2.5 per step. */
+    public static final double[] LATENCY_BUCKETS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5,
+            1, 2.5, 5, 10, 30, 60, 120, 300, 600, 1800
+    };
+
+    private static final class Family {
+        final String type;
+        final String help;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+        Family(String type, String help) { this.type = type; this.help = help; }
+    }
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Object> LOOKUP = new ConcurrentHashMap<>();
+
+    public static Counter counter(String name, String help) { return counter(name, help, ""); }
+
+    /** labels in Prometheus syntax without braces, e.g. {@code type="ORDER",dir="in"}. */
+    public static Counter counter(String name, String help, String labels) {
+        return (Counter) get(name, "counter", help, labels, Counter::new);
+    }
+
+    public static Gauge gauge(String name, String help) { return gauge(name, help, ""); }
+
+    public static Gauge gauge(String name, String help, String labels) {
+        return (Gauge) get(name, "gauge", help, labels, Gauge::new);
+    }
+
+    public static Histogram histogram(String name, String help) {
+        return (Histogram) get(name, "histogram", help, "", () -> new Histogram(LATENCY_BUCKETS));
+    }
+
+    private static Object get(String name, String type, String help, String labels,
+                              java.util.function.Supplier<Object> factory) {
+        String key = name + '{' + labels + '}';
+        Object m = LOOKUP.get(key);
+        if (m != null) return m;
+        Family f = FAMILIES.computeIfAbsent(name, n -> new Family(type, help));
+        m = f.series.computeIfAbsent(labels, l -> factory.get());
+        LOOKUP.put(key, m);
+        return m;
+    }
+
+    /** Prometheus text exposition format (version 0.0.4). */
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Map.Entry<String, Family> fe : FAMILIES.entrySet()) {
+            String name = fe.getKey();
+            Family f = fe.getValue();
+            sb.append("# HELP ").append(name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(f.type).append('\n');
+            for (Map.Entry<String, Object> se : f.series.entrySet()) {
+                String labels = se.getKey();
+                Object m = se.getValue();
+                if (m instanceof Counter c) {
+                    series(sb, name, labels, Long.toString(c.get()));
+                } else if (m instanceof Gauge g) {
+                    series(sb, name, labels, Long.toString(g.get()));
+                } else if (m instanceof Histogram h) {
+                    long cum = 0;
+                    for (int i = 0; i < h.buckets.length; i++) {
+                        cum += h.buckets[i].sum();
+                        String le = i < h.bounds.length ? java.math.BigDecimal.valueOf(h.bounds[i]).toPlainString() : "+Inf";
+                        String l = (labels.isEmpty() ? "" : labels + ",") + "le=\"" + le + "\"";
+                        series(sb, name + "_bucket", l, Long.toString(cum));
+                    }
+                    series(sb, name + "_sum", labels, Double.toString(h.sumNanos.sum() / 1e9));
+                    series(sb, name + "_count", labels, Long.toString(h.count.sum()));
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void series(StringBuilder sb, String name, String labels, String value) {
+        sb.append(name);
+        if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+        sb.append(' ').append(value).append('\n');
+    }
+}
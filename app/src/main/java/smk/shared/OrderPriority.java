@@ -0,0 +1,16 @@
+package smk.shared;
+
+/**
+ * Ticket priority class, carried on ORDER as "prio". Lower ordinal is served first;
+ * inside a class the kitchen keeps Lamport order.
+ */
+public enum OrderPriority {
+    RUSH, VIP, NORMAL, LOW;
+
+    /** Lenient wire parse: unknown or missing means NORMAL. */
+    public static OrderPriority parse(String s) {
+        if (s == null || s.isBlank()) return NORMAL;
+        try { return valueOf(s.trim().toUpperCase()); }
+        catch (IllegalArgumentException e) { return NORMAL; }
+    }
+}
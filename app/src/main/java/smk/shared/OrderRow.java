@@ -7,12 +7,45 @@ public class OrderRow implements Comparable<OrderRow> {
     private final StringProperty dish = new SimpleStringProperty();
     private final IntegerProperty tsClient = new SimpleIntegerProperty();
     private final IntegerProperty lamportOrder = new SimpleIntegerProperty();
+    private final LongProperty requestId = new SimpleLongProperty();
+    // monotonic stamps for queue-wait / service-time metrics; 0 = not yet
+    private final long queuedNanos = System.nanoTime();
+    private long startedNanos;
+    // wall-clock timeline (epoch millis) for display and SLA; 0 = not yet
+    private final long receivedAt = System.currentTimeMillis();
+    private long startedAt;
+    private long doneAt;
+    // priority class as ordered, and the class it is served in now (aging lowers it;
+    // -1 = cooking). Only change rank while the row is outside any sorted collection.
+    private final OrderPriority priority;
+    private int rank;
+    // kitchen-engine shard whose clock assigned lamportOrder (see smk.server.ShardRouter)
+    private final int shard;
+    // ordering terminal's session, echoed on START/DONE/ETA so it can match its own orders
+    private String session;
 
     public OrderRow(String client, String dish, int tsClient, int lamportOrder) {
+        this(client, dish, tsClient, lamportOrder, 0);
+    }
+
+    public OrderRow(String client, String dish, int tsClient, int lamportOrder, long requestId) {
+        this(client, dish, tsClient, lamportOrder, requestId, OrderPriority.NORMAL);
+    }
+
+    public OrderRow(String client, String dish, int tsClient, int lamportOrder, long requestId, OrderPriority priority) {
+        this(client, dish, tsClient, lamportOrder, requestId, priority, 0);
+    }
+
+    public OrderRow(String client, String dish, int tsClient, int lamportOrder, long requestId, OrderPriority priority,
+                    int shard) {
+        this.shard = shard;
+        this.priority = priority == null ? OrderPriority.NORMAL : priority;
+        this.rank = this.priority.ordinal();
         this.client.set(client);
         this.dish.set(dish);
         this.tsClient.set(tsClient);
         this.lamportOrder.set(lamportOrder);
+        this.requestId.set(requestId);
     }
 
     public String getClient() { return client.get(); }
@@ -31,10 +64,38 @@ public class OrderRow implements Comparable<OrderRow> {
     public void setLamportOrder(int v) { lamportOrder.set(v); }
     public IntegerProperty lamportOrderProperty() { return lamportOrder; }
 
-    // For PriorityQueue ordering: (ts, clientName) total order tie-break
+    public long getRequestId() { return requestId.get(); }
+    public void setRequestId(long v) { requestId.set(v); }
+    public LongProperty requestIdProperty() { return requestId; }
+
+    public long getQueuedNanos() { return queuedNanos; }
+    public long getStartedNanos() { return startedNanos; }
+    public void setStartedNanos(long v) { startedNanos = v; }
+
+    public long getReceivedAt() { return receivedAt; }
+    public long getStartedAt() { return startedAt; }
+    public void setStartedAt(long v) { startedAt = v; }
+    public long getDoneAt() { return doneAt; }
+    public void setDoneAt(long v) { doneAt = v; }
+
+    public OrderPriority getPriority() { return priority; }
+    public int getRank() { return rank; }
+    public void setRank(int v) { rank = v; }
+
+    public int getShard() { return shard; }
+
+    public String getSession() { return session; }
+    public void setSession(String v) { session = v; }
+
+    // Queue ordering: current class, then (Lamport, shard) to merge the shards' clocks,
+    // then clientName as total order tie-break
     @Override
     public int compareTo(OrderRow o) {
-        int c = Integer.compare(this.getLamportOrder(), o.getLamportOrder());
+        int c = Integer.compare(this.rank, o.rank);
+        if (c != 0) return c;
+        c = Integer.compare(this.getLamportOrder(), o.getLamportOrder());
+        if (c != 0) return c;
+        c = Integer.compare(this.shard, o.shard);
         if (c != 0) return c;
         return this.getClient().compareTo(o.getClient());
     }
@@ -0,0 +1,101 @@
+package smk.shared;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free sliding-window event counter.
+ * Events land in a ring of time buckets held in two primitive AtomicLongArrays
+ * (count + which period the bucket belongs to), so marking allocates nothing and reads
+ * of any window up to the ring length work from any thread. A bucket is recycled by the
+ * first writer of a new period; an add racing that reset can be lost, which is fine for
+ * rates shown on a dashboard.
+ */
+public class RateCounter {
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray epochs;
+
+    /** Per-second buckets covering the last 15 minutes (1m/5m/15m windows). */
+    public RateCounter() {
+        this(1, 900);
+    }
+
+    public RateCounter(int bucketSeconds, int buckets) {
+        this.bucketMillis = bucketSeconds * 1000L;
+        this.buckets = buckets;
+        this.counts = new AtomicLongArray(buckets);
+        this.epochs = new AtomicLongArray(buckets);
+        for (int i = 0; i < buckets; i++) epochs.set(i, -1);
+    }
+
+    public void mark() { mark(1); }
+
+    public void mark(long n) {
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        int i = (int) (epoch % buckets);
+        long seen = epochs.get(i);
+        if (seen != epoch && epochs.compareAndSet(i, seen, epoch)) {
+            counts.set(i, n);
+            return;
+        }
+        counts.addAndGet(i, n);
+    }
+
+    /** Events in the last {@code seconds} (capped at the ring length), including the current bucket. */
+    public long count(int seconds) {
+        long now = System.currentTimeMillis() / bucketMillis;
+        long span = Math.min(buckets, Math.max(1, (seconds * 1000L + bucketMillis - 1) / bucketMillis));
+        long oldest = now - span + 1;
+        long sum = 0;
+        for (int i = 0; i < buckets; i++) {
+            long e = epochs.get(i);
+            if (e >= oldest && e <= now) sum += counts.get(i);
+        }
+        return sum;
+    }
+
+    /** Average events per minute over the last {@code seconds}. */
+    public double perMinute(int seconds) {
+        return count(seconds) * 60.0 / Math.max(1, seconds);
+    }
+
+    /**
+     * One RateCounter per key (station, dish, ...), created on first use.
+     * Keyed counters default to 10s buckets so thousands of keys stay cheap.
+     */
+    public static class Keyed {
+        private final ConcurrentHashMap<String, RateCounter> byKey = new ConcurrentHashMap<>();
+        private final int bucketSeconds;
+        private final int buckets;
+
+        public Keyed() {
+            this(10, 90);
+        }
+
+        public Keyed(int bucketSeconds, int buckets) {
+            this.bucketSeconds = bucketSeconds;
+            this.buckets = buckets;
+        }
+
+        public void mark(String key) {
+            byKey.computeIfAbsent(key == null ? "" : key, k -> new RateCounter(bucketSeconds, buckets)).mark();
+        }
+
+        public RateCounter get(String key) { return byKey.get(key); }
+
+        /** Counts per key over the window, sorted by key; keys with no events are left out. */
+        public Map<String, Long> counts(int seconds) {
+            Map<String, Long> out = new TreeMap<>();
+            byKey.forEach((k, c) -> {
+                long n = c.count(seconds);
+                if (n > 0) out.put(k, n);
+            });
+            return out;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package smk.shared;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free rolling percentiles over the last {@code windowSeconds}.
+ * The window is split into slots, each a log-linear histogram (4 sub-buckets per power
+ * of two, about 12-25% relative error) held in an AtomicLongArray. Recording is one
+ * atomic add; a slot is reset by the first writer that sees it belongs to an old period.
+ * Readers sum the live slots, so reads are safe from any thread.
+ */
+public class RollingPercentiles {
+
+    private static final int SUB = 4;          // sub-buckets per power of two
+    private static final int BUCKETS = SUB + 40 * SUB; // covers values up to ~2^41
+
+    private final int slotCount;
+    private final long slotMillis;
+    private final AtomicLongArray[] slots;
+    private final AtomicLong[] slotEpoch; // which period each slot currently holds
+    private final LongSupplier millisClock;
+
+    public RollingPercentiles(int windowSeconds, int slotCount) {
+        this(windowSeconds, slotCount, System::currentTimeMillis);
+    }
+
+    /** With the wall clock (in millis) that picks the slot; tests pass a fake one. */
+    RollingPercentiles(int windowSeconds, int slotCount, LongSupplier millisClock) {
+        this.millisClock = millisClock;
+        this.slotCount = slotCount;
+        this.slotMillis = Math.max(1, windowSeconds * 1000L / slotCount);
+        this.slots = new AtomicLongArray[slotCount];
+        this.slotEpoch = new AtomicLong[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new AtomicLongArray(BUCKETS);
+            slotEpoch[i] = new AtomicLong(-1);
+        }
+    }
+
+    /** Record a non-negative value (any unit; millis in this project). */
+    public void record(long value) {
+        long epoch = millisClock.getAsLong() / slotMillis;
+        int i = (int) (epoch % slotCount);
+        long seen = slotEpoch[i].get();
+        if (seen != epoch && slotEpoch[i].compareAndSet(seen, epoch)) {
+            AtomicLongArray s = slots[i];
+            for (int b = 0; b < BUCKETS; b++) s.set(b, 0);
+        }
+        slots[i].incrementAndGet(bucket(Math.max(0, value)));
+    }
+
+    /** Values recorded in the window, e.g. for "n=" labels. */
+    public long count() {
+        long n = 0;
+        long[] h = merged();
+        for (long c : h) n += c;
+        return n;
+    }
+
+    /** Approximate p-th percentile (0..100) over the window, or -1 if nothing was recorded. */
+    public long percentile(double p) {
+        return percentiles(p)[0];
+    }
+
+    /** Several percentiles from one pass over the slots. */
+    public long[] percentiles(double... ps) {
+        long[] h = merged();
+        long total = 0;
+        for (long c : h) total += c;
+        long[] out = new long[ps.length];
+        for (int k = 0; k < ps.length; k++) {
+            if (total == 0) { out[k] = -1; continue; }
+            long rank = Math.max(1, (long) Math.ceil(ps[k] / 100.0 * total));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += h[b];
+                if (seen >= rank) { out[k] = upperBound(b); break; }
+            }
+        }
+        return out;
+    }
+
+    private long[] merged() {
+        long oldest = millisClock.getAsLong() / slotMillis - slotCount + 1;
+        long[] h = new long[BUCKETS];
+        for (int i = 0; i < slotCount; i++) {
+            if (slotEpoch[i].get() < oldest) continue; // stale period
+            AtomicLongArray s = slots[i];
+            for (int b = 0; b < BUCKETS; b++) h[b] += s.get(b);
+        }
+        return h;
+    }
+
+    static int bucket(long v) {
+        if (v < SUB) return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v); // e >= 2
+        int sub = (int) ((v >> (e - 2)) & (SUB - 1));
+        return Math.min(BUCKETS - 1, SUB + (e - 2) * SUB + sub);
+    }
+
+    /** Largest value that maps to bucket b. */
+    static long upperBound(int b) {
+        if (b < SUB) return b;
+        int e = (b - SUB) / SUB + 2;
+        int sub = (b - SUB) % SUB;
+        return ((long) (SUB + sub + 1) << (e - 2)) - 1;
+    }
+}
@@ -0,0 +1,41 @@
+package smk.shared;
+
+/**
+ * SMK_* settings: a system property if set, otherwise the environment variable of the same
+ * name. Blank counts as unset. Shared by client and server so every setting is looked up
+ * the same way.
+ */
+public final class Settings {
+
+    private Settings() {}
+
+    /** Trimmed value, or null if unset. */
+    public static String get(String name) {
+        String v = System.getProperty(name);
+        if (v == null || v.isBlank()) v = System.getenv(name);
+        return v == null || v.isBlank() ? null : v.trim();
+    }
+
+    /** Trimmed value, or {@code def} if unset. */
+    public static String get(String name, String def) {
+        String v = get(name);
+        return v == null ? def : v;
+    }
+
+    /** Numeric value, or {@code def} if unset or not a number. */
+    public static double get(String name, double def) {
+        String v = get(name);
+        if (v == null) return def;
+        try { return Double.parseDouble(v); }
+        catch (NumberFormatException e) { return def; }
+    }
+
+    /** "1"/"true" or "0"/"false" (any case); {@code def} if unset or anything else. */
+    public static boolean flag(String name, boolean def) {
+        String v = get(name);
+        if (v == null) return def;
+        if (v.equals("1") || v.equalsIgnoreCase("true")) return true;
+        if (v.equals("0") || v.equalsIgnoreCase("false")) return false;
+        return def;
+    }
+}
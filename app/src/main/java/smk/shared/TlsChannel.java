@@ -0,0 +1,342 @@
+package smk.shared;
+
+import javax.net.ssl.*;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * TLS over a blocking socket channel via {@link SSLEngine}, so {@link LineChannel} runs
+ * unchanged on top: one reader thread, one writer at a time (wrap and unwrap may overlap;
+ * the reader takes the write lock when the engine needs to answer something itself).
+ *
+ * Turned on with SMK_TLS=1 on both ends. The server presents the key in SMK_TLS_KEYSTORE
+ * (PKCS12 or JKS, password SMK_TLS_KEYSTORE_PASSWORD). The client trusts SMK_TLS_TRUSTSTORE
+ * (password SMK_TLS_TRUSTSTORE_PASSWORD), else the keystore above when it is readable on
+ * this machine, else the JDK's default CAs, and checks the server name against the
+ * certificate unless SMK_TLS_VERIFY_HOST=0.
+ *
+ * One SSLContext per process and role, so every reconnect looks up the session cache:
+ * after the first full handshake a terminal resumes (TLS 1.3 PSK ticket) with no
+ * certificate exchange or signature, which is what keeps a reconnect storm after a Wi-Fi
+ * blip cheap. Sessions stay resumable for SMK_TLS_SESSION_SEC (default 86400).
+ */
+public final class TlsChannel implements ByteChannel, GatheringByteChannel {
+
+    private static final Metrics.Counter FULL = Metrics.counter("smk_tls_handshakes_total",
+            "TLS handshakes by kind", "kind=\"full\"");
+    private static final Metrics.Counter RESUMED = Metrics.counter("smk_tls_handshakes_total",
+            "TLS handshakes by kind", "kind=\"resumed\"");
+    private static final Metrics.Histogram HANDSHAKE = Metrics.histogram("smk_tls_handshake_seconds",
+            "TLS handshake time");
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static SSLContext serverContext;
+    private static SSLContext clientContext;
+
+    private final SocketChannel ch;
+    private final SSLEngine engine;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private ByteBuffer netIn;   // write mode; reader thread only
+    private ByteBuffer appIn;   // write mode; reader thread only
+    private ByteBuffer netOut;  // under writeLock
+    private boolean resumed;
+    private volatile boolean closed;
+
+    private TlsChannel(SocketChannel ch, SSLEngine engine) {
+        this.ch = ch;
+        this.engine = engine;
+        SSLSession s = engine.getSession();
+        netIn = ByteBuffer.allocateDirect(s.getPacketBufferSize());
+        netOut = ByteBuffer.allocateDirect(s.getPacketBufferSize());
+        appIn = ByteBuffer.allocate(s.getApplicationBufferSize());
+    }
+
+    public static boolean enabled() {
+        return Settings.flag("SMK_TLS", false);
+    }
+
+    /** Accepted connection: handshake as the server. */
+    public static TlsChannel server(SocketChannel ch) throws IOException {
+        SSLEngine e = serverContext().createSSLEngine();
+        e.setUseClientMode(false);
+        return handshake(ch, e);
+    }
+
+    /** Dialled connection: handshake as the client, resuming a cached session for host:port. */
+    public static TlsChannel client(SocketChannel ch, String host, int port) throws IOException {
+        SSLEngine e = clientContext().createSSLEngine(host, port);
+        e.setUseClientMode(true);
+        String verify = Settings.get("SMK_TLS_VERIFY_HOST");
+        if (verify == null || !verify.equals("0")) {
+            SSLParameters p = e.getSSLParameters();
+            p.setEndpointIdentificationAlgorithm("HTTPS");
+            e.setSSLParameters(p);
+        }
+        return handshake(ch, e);
+    }
+
+    private static TlsChannel handshake(SocketChannel ch, SSLEngine e) throws IOException {
+        TlsChannel t = new TlsChannel(ch, e);
+        long start = System.nanoTime();
+        long wallStart = System.currentTimeMillis();
+        e.beginHandshake();
+        t.runHandshake();
+        HANDSHAKE.observeNanos(System.nanoTime() - start);
+        // a resumed session keeps the creation time of the handshake that made it
+        t.resumed = e.getSession().getCreationTime() < wallStart;
+        (t.resumed ? RESUMED : FULL).inc();
+        return t;
+    }
+
+    private void runHandshake() throws IOException {
+        while (true) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_WRAP -> wrapControl();
+                case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> {
+                    if (!unwrap()) throw new ClosedChannelException();
+                }
+                case NEED_TASK -> runTasks();
+                default -> { return; }
+            }
+        }
+    }
+
+    /** True if this connection skipped the full handshake by resuming a session. */
+    public boolean isResumed() { return resumed; }
+
+    public SSLSession session() { return engine.getSession(); }
+
+    // --- reading -----------------------------------------------------------------
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        while (appIn.position() == 0) {
+            if (!unwrap()) return -1;
+        }
+        appIn.flip();
+        int n = Math.min(dst.remaining(), appIn.remaining());
+        ByteBuffer slice = appIn.slice();
+        slice.limit(n);
+        dst.put(slice);
+        appIn.position(appIn.position() + n);
+        appIn.compact();
+        return n;
+    }
+
+    /** Unwrap one record, reading from the socket as needed. False at end of stream. */
+    private boolean unwrap() throws IOException {
+        while (true) {
+            netIn.flip();
+            SSLEngineResult r = engine.unwrap(netIn, appIn);
+            netIn.compact();
+            if (r.getHandshakeStatus() == HandshakeStatus.NEED_TASK) runTasks();
+            if (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) wrapControl(); // post-handshake reply
+            switch (r.getStatus()) {
+                case OK:
+                    return true;
+                case CLOSED:
+                    return appIn.position() > 0;
+                case BUFFER_OVERFLOW:
+                    appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                    break;
+                case BUFFER_UNDERFLOW:
+                    if (!netIn.hasRemaining()) netIn = grow(netIn, engine.getSession().getPacketBufferSize());
+                    if (ch.read(netIn) < 0) {
+                        try { engine.closeInbound(); } catch (SSLException ignored) {} // peer skipped close_notify
+                        return false;
+                    }
+                    break;
+            }
+        }
+    }
+
+    // --- writing -----------------------------------------------------------------
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /** Encrypt and send everything in srcs; frames batched by the caller share TLS records. */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        writeLock.lock();
+        try {
+            long consumed = 0;
+            while (hasRemaining(srcs, offset, length)) {
+                netOut.clear();
+                SSLEngineResult r = engine.wrap(srcs, offset, length, netOut);
+                if (r.getStatus() == SSLEngineResult.Status.CLOSED) throw new ClosedChannelException();
+                if (r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    netOut = grow(netOut, engine.getSession().getPacketBufferSize());
+                    continue;
+                }
+                if (r.getHandshakeStatus() == HandshakeStatus.NEED_TASK) runTasks();
+                send();
+                consumed += r.bytesConsumed();
+            }
+            return consumed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Engine-originated records (handshake, key update, close_notify). */
+    private void wrapControl() throws IOException {
+        writeLock.lock();
+        try {
+            while (engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+                netOut.clear();
+                SSLEngineResult r = engine.wrap(EMPTY, netOut);
+                if (r.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    netOut = grow(netOut, engine.getSession().getPacketBufferSize());
+                    continue;
+                }
+                send();
+                if (r.getStatus() == SSLEngineResult.Status.CLOSED) break;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void send() throws IOException {
+        netOut.flip();
+        while (netOut.hasRemaining()) ch.write(netOut);
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) task.run();
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] bs, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (bs[i].hasRemaining()) return true;
+        }
+        return false;
+    }
+
+    private static ByteBuffer grow(ByteBuffer b, int atLeast) {
+        ByteBuffer bigger = b.isDirect()
+                ? ByteBuffer.allocateDirect(Math.max(atLeast, b.capacity() * 2))
+                : ByteBuffer.allocate(Math.max(atLeast, b.capacity() * 2));
+        b.flip();
+        return bigger.put(b);
+    }
+
+    @Override
+    public boolean isOpen() { return !closed && ch.isOpen(); }
+
+    /** close_notify then TCP half-close; reading continues until the peer closes too. */
+    public void shutdownOutput() throws IOException {
+        writeLock.lock();
+        try {
+            engine.closeOutbound();
+            netOut.clear();
+            engine.wrap(EMPTY, netOut);
+            send();
+            ch.shutdownOutput();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Send close_notify if no write is in progress, then close the socket. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        engine.closeOutbound();
+        if (writeLock.tryLock()) { // a writer stuck on a dead peer must not block close
+            try {
+                netOut.clear();
+                engine.wrap(EMPTY, netOut);
+                send();
+            } catch (IOException ignored) {
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        ch.close();
+    }
+
+    // --- configuration -------------------------------------------------------------
+
+    public static synchronized SSLContext serverContext() throws IOException {
+        if (serverContext == null) {
+            String path = Settings.get("SMK_TLS_KEYSTORE");
+            if (path == null) throw new IOException("SMK_TLS=1 but SMK_TLS_KEYSTORE is not set");
+            try {
+                KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                kmf.init(load(Paths.get(path), Settings.get("SMK_TLS_KEYSTORE_PASSWORD")), password(Settings.get("SMK_TLS_KEYSTORE_PASSWORD")));
+                SSLContext ctx = SSLContext.getInstance("TLS");
+                ctx.init(kmf.getKeyManagers(), null, null);
+                configureSessions(ctx.getServerSessionContext());
+                serverContext = ctx;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("TLS keystore " + path + ": " + e.getMessage(), e);
+            }
+        }
+        return serverContext;
+    }
+
+    public static synchronized SSLContext clientContext() throws IOException {
+        if (clientContext == null) {
+            String path = Settings.get("SMK_TLS_TRUSTSTORE");
+            String pass = Settings.get("SMK_TLS_TRUSTSTORE_PASSWORD");
+            if (path == null && Settings.get("SMK_TLS_KEYSTORE") != null && Files.isReadable(Paths.get(Settings.get("SMK_TLS_KEYSTORE")))) {
+                path = Settings.get("SMK_TLS_KEYSTORE"); // server on this machine: trust its own certificate
+                pass = Settings.get("SMK_TLS_KEYSTORE_PASSWORD");
+            }
+            try {
+                TrustManager[] tms = null; // JDK default CAs
+                if (path != null) {
+                    TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                    tmf.init(load(Paths.get(path), pass));
+                    tms = tmf.getTrustManagers();
+                }
+                SSLContext ctx = SSLContext.getInstance("TLS");
+                ctx.init(null, tms, null);
+                configureSessions(ctx.getClientSessionContext());
+                clientContext = ctx;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("TLS truststore " + path + ": " + e.getMessage(), e);
+            }
+        }
+        return clientContext;
+    }
+
+    private static void configureSessions(SSLSessionContext c) {
+        String sec = Settings.get("SMK_TLS_SESSION_SEC");
+        try { c.setSessionTimeout(sec == null ? 86_400 : Integer.parseInt(sec)); }
+        catch (NumberFormatException e) { c.setSessionTimeout(86_400); }
+    }
+
+    private static KeyStore load(Path path, String password) throws IOException, GeneralSecurityException {
+        try (InputStream in = Files.newInputStream(path)) {
+            KeyStore ks = KeyStore.getInstance(path.toString().endsWith(".jks") ? "JKS" : "PKCS12");
+            ks.load(in, password(password));
+            return ks;
+        }
+    }
+
+    private static char[] password(String p) { return p == null ? new char[0] : p.toCharArray(); }
+}
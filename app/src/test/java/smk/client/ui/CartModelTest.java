@@ -0,0 +1,58 @@
+package smk.client.ui;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartModelTest {
+
+    private final CartModel cart = new CartModel();
+
+    @Test
+    void sameIdMergesAcrossARenameAndRepricesTheQtyAlreadyThere() {
+        CartRow row = cart.add("pho-1", "Pho", "pho", 10, 2);
+        assertSame(row, cart.add("pho-1", "Pho Bo", "pho", 12, 1));
+        assertEquals(1, cart.size());
+        assertEquals(3, row.getQty());
+        assertEquals(12, row.getUnit());
+        assertEquals("Pho Bo", row.getDish());
+        assertEquals(3, cart.getItems());
+        assertEquals(36, cart.getSubtotal());
+        assertSame(row, cart.get("pho-1", "anything"));
+    }
+
+    @Test
+    void sameNameWithDifferentIdsStaysApart() {
+        cart.add("a", "Soup", "soup", 5, 1);
+        cart.add("b", "Soup", "soup", 7, 1);
+        cart.add(null, "Soup", "soup", 9, 1);
+        cart.add(null, "#a", "soup", 1, 1); // a name that looks like an id key
+        assertEquals(4, cart.size());
+        assertEquals(22, cart.getSubtotal());
+    }
+
+    @Test
+    void totalsFollowQtyEditsAndRemoval() {
+        CartRow pho = cart.add("pho-1", "Pho", "pho", 10, 1);
+        cart.add(null, "Tea", "tea", 3, 2);
+        pho.qtyProperty().set(4);
+        assertEquals(6, cart.getItems());
+        assertEquals(46, cart.getSubtotal());
+        cart.add("pho-1", "Pho", "pho", 8, 0); // cheaper now: 4 x 2 off
+        assertEquals(38, cart.getSubtotal());
+        cart.remove(pho);
+        assertEquals(2, cart.getItems());
+        assertEquals(6, cart.getSubtotal());
+        assertNull(cart.get("pho-1", "Pho"));
+        cart.add("pho-1", "Pho", "pho", 10, CartModel.MAX_QTY + 5);
+        assertEquals(CartModel.MAX_QTY, cart.get("pho-1", null).getQty());
+    }
+
+    @Test
+    void statusByNameFindsIdKeyedRows() {
+        CartRow row = cart.add("pho-1", "Pho", "pho", 10, 1);
+        assertTrue(cart.setStatus("Pho", "READY"));
+        assertEquals("READY", row.getStatus());
+        assertFalse(cart.setStatus("Bun", "READY"));
+    }
+}
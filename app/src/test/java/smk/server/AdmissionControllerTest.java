@@ -0,0 +1,124 @@
+package smk.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final AtomicLong now = new AtomicLong(1_000 * MS);
+
+    private AdmissionController controller(double rate, double burst, int maxQueue) {
+        return new AdmissionController(rate, burst, maxQueue, now::get);
+    }
+
+    @Test
+    void burstIsAdmittedThenTheRateLimitKicksIn() {
+        AdmissionController a = controller(10, 3, 100);
+        for (int i = 0; i < 3; i++) assertTrue(a.tryAdmit("alice").admitted, "burst order " + i);
+        AdmissionController.Decision d = a.tryAdmit("alice");
+        assertFalse(d.admitted);
+        assertEquals("rate limit", d.reason);
+        assertEquals(100, d.retryAfterMs, "one token at 10/s is 100 ms away");
+        assertEquals(3, a.getAcceptedTotal());
+        assertEquals(1, a.getRejectedTotal());
+    }
+
+    @Test
+    void tokensRefillAtTheRateUpToTheBurst() {
+        AdmissionController a = controller(10, 3, 100);
+        for (int i = 0; i < 3; i++) a.tryAdmit("alice");
+        now.addAndGet(40 * MS);
+        assertEquals(60, a.tryAdmit("alice").retryAfterMs, "0.4 token refilled, 0.6 to go");
+        now.addAndGet(60 * MS);
+        assertTrue(a.tryAdmit("alice").admitted);
+        assertFalse(a.tryAdmit("alice").admitted);
+
+        now.addAndGet(60_000 * MS); // a long idle spell refills the burst, not more
+        for (int i = 0; i < 3; i++) assertTrue(a.tryAdmit("alice").admitted);
+        assertFalse(a.tryAdmit("alice").admitted);
+    }
+
+    @Test
+    void clientsHaveTheirOwnBuckets() {
+        AdmissionController a = controller(1, 1, 100);
+        assertTrue(a.tryAdmit("alice").admitted);
+        assertFalse(a.tryAdmit("alice").admitted);
+        assertTrue(a.tryAdmit("bob").admitted);
+        assertTrue(a.tryAdmit(null).admitted, "no name shares one anonymous bucket");
+        assertFalse(a.tryAdmit(null).admitted);
+    }
+
+    @Test
+    void queueCapRejectsUntilOrdersFinish() {
+        AdmissionController a = controller(1000, 1000, 2);
+        assertTrue(a.tryAdmit("a").admitted);
+        assertTrue(a.tryAdmit("b").admitted);
+        AdmissionController.Decision d = a.tryAdmit("c");
+        assertFalse(d.admitted);
+        assertEquals("queue full", d.reason);
+        assertTrue(d.retryAfterMs >= 500 && d.retryAfterMs <= 1500, "jittered: " + d.retryAfterMs);
+        assertEquals(2, a.getDepth());
+
+        a.release();
+        assertTrue(a.tryAdmit("c").admitted);
+        assertEquals(2, a.getDepth());
+    }
+
+    @Test
+    void depthNeverGoesNegativeAndCanBeResynced() {
+        AdmissionController a = controller(1000, 1000, 5);
+        a.release();
+        assertEquals(0, a.getDepth());
+        a.resetDepth(5);
+        assertFalse(a.tryAdmit("a").admitted);
+        a.resetDepth(-1);
+        assertEquals(0, a.getDepth());
+        assertTrue(a.tryAdmit("a").admitted);
+    }
+
+    @Test
+    void ratesAreSampledOverTheElapsedTime() {
+        AdmissionController a = controller(1, 2, 100);
+        a.tryAdmit("a");
+        a.tryAdmit("a");
+        a.tryAdmit("a"); // rate limited
+        now.addAndGet(500 * MS);
+        a.sampleRates();
+        assertEquals(4.0, a.getAcceptedPerSec(), 1e-9);
+        assertEquals(2.0, a.getRejectedPerSec(), 1e-9);
+        now.addAndGet(1_000 * MS);
+        a.sampleRates();
+        assertEquals(0.0, a.getAcceptedPerSec(), 1e-9);
+    }
+
+    @Test
+    void aFloodOfNamesNeitherResetsLimitsNorGetsABurstEach() {
+        AdmissionController a = controller(1, 1, 1_000_000);
+        assertTrue(a.tryAdmit("alice").admitted);
+        for (int i = 1; i < AdmissionController.MAX_TRACKED_CLIENTS; i++) a.tryAdmit("bot-" + i);
+        assertFalse(a.tryAdmit("alice").admitted, "still limited");
+
+        // table full and swept too recently: newcomers share one overflow bucket
+        assertTrue(a.tryAdmit("late-1").admitted);
+        assertFalse(a.tryAdmit("late-2").admitted);
+        assertFalse(a.tryAdmit("late-1").admitted);
+    }
+
+    @Test
+    void refilledBucketsAreSweptToMakeRoom() {
+        AdmissionController a = controller(1, 1, 1_000_000);
+        for (int i = 0; i < AdmissionController.MAX_TRACKED_CLIENTS; i++) a.tryAdmit("bot-" + i);
+        now.addAndGet(1_500 * MS); // every bucket has refilled
+        assertTrue(a.tryAdmit("bot-0").admitted); // ...and this one is empty again
+
+        assertTrue(a.tryAdmit("late-1").admitted);
+        assertTrue(a.tryAdmit("late-2").admitted, "own bucket once the idle ones are gone");
+        assertFalse(a.tryAdmit("late-1").admitted);
+        assertFalse(a.tryAdmit("bot-0").admitted, "a bucket in use survives the sweep");
+    }
+}
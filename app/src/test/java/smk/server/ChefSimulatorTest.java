@@ -0,0 +1,77 @@
+package smk.server;
+
+import org.junit.jupiter.api.Test;
+import smk.server.ChefSimulator.CookTimes;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChefSimulatorTest {
+
+    private final Random rnd = new Random(1);
+
+    @Test
+    void fixedTimesPerDishWithAFallback() {
+        CookTimes c = CookTimes.parse("pizza=fixed:120; soupe=fixed:45, *=fixed:60");
+        assertEquals(120, c.sampleSeconds("pizza", rnd));
+        assertEquals(45, c.sampleSeconds("soupe", rnd));
+        assertEquals(60, c.sampleSeconds("salade", rnd));
+    }
+
+    @Test
+    void namesAndDistributionsAreTrimmedAndCaseInsensitive() {
+        CookTimes c = CookTimes.parse("  pizza =  FIXED:30 ");
+        assertEquals(30, c.sampleSeconds("pizza", rnd));
+    }
+
+    @Test
+    void nullOrBlankSpecKeepsTheDefaultLognormal() {
+        for (String spec : new String[] { null, "", "   " }) {
+            CookTimes c = CookTimes.parse(spec);
+            double sum = 0;
+            for (int i = 0; i < 2_000; i++) {
+                double s = c.sampleSeconds("anything", rnd);
+                assertTrue(s > 0, "sample " + s);
+                sum += s;
+            }
+            // lognormal:90:0.4 has a mean of 90 * e^(0.08), about 97 s
+            double mean = sum / 2_000;
+            assertTrue(mean > 85 && mean < 110, "mean " + mean);
+        }
+    }
+
+    @Test
+    void malformedEntriesAreSkippedAndTheRestStillApply() {
+        CookTimes c = CookTimes.parse("pizza=gamma:3;soupe=fixed:abc;noequals;=fixed:5;frites=fixed:20;*=bogus");
+        assertEquals(20, c.sampleSeconds("frites", rnd));
+        // unknown distribution, bad number and a bad fallback leave the default in place
+        for (String dish : new String[] { "pizza", "soupe", "salade" }) {
+            double s = c.sampleSeconds(dish, rnd);
+            assertTrue(s > 0 && s != 5, dish + " got " + s);
+        }
+    }
+
+    @Test
+    void laterEntriesForTheSameDishWin() {
+        CookTimes c = CookTimes.parse("pizza=fixed:10;pizza=fixed:11");
+        assertEquals(11, c.sampleSeconds("pizza", rnd));
+    }
+
+    @Test
+    void samplesStayInsideEachDistributionsRange() {
+        CookTimes c = CookTimes.parse("u=uniform:30:60;e=exp:40;n=normal:5:50;l=lognormal:90:0.4");
+        double expSum = 0;
+        for (int i = 0; i < 5_000; i++) {
+            double u = c.sampleSeconds("u", rnd);
+            assertTrue(u >= 30 && u < 60, "uniform " + u);
+            double e = c.sampleSeconds("e", rnd);
+            assertTrue(e >= 0, "exp " + e);
+            expSum += e;
+            assertTrue(c.sampleSeconds("n", rnd) >= 0, "normal is clipped at zero");
+            assertTrue(c.sampleSeconds("l", rnd) > 0, "lognormal is positive");
+        }
+        double expMean = expSum / 5_000;
+        assertTrue(expMean > 36 && expMean < 44, "exp mean " + expMean);
+    }
+}
@@ -0,0 +1,191 @@
+package smk.server;
+
+import org.junit.jupiter.api.Test;
+import smk.shared.OrderRow;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EtaEstimatorTest {
+
+    private static final long NOW = 1_000_000L;
+
+    // soup and stew share the pot; fries have the fryer to themselves
+    private final EtaEstimator eta = new EtaEstimator(dish -> dish.equals("fries") ? "fryer" : "pot");
+
+    private int lamport = 0;
+
+    private OrderRow order(String dish) {
+        return new OrderRow("c", dish, 0, ++lamport);
+    }
+
+    /** Train a dish with n identical cook times (a constant series keeps the average exact). */
+    private void train(String dish, long cookMs, int n) {
+        for (int i = 0; i < n; i++) eta.finished(order(dish), cookMs);
+    }
+
+    private Map<OrderRow, Long> changed(long now, long threshold) {
+        Map<OrderRow, Long> out = new LinkedHashMap<>();
+        eta.forEachChanged(now, threshold, out::put);
+        return out;
+    }
+
+    @Test
+    void estimatesFallBackFromDishToStationToOverall() {
+        long untrained = eta.estimateMs("soup");
+        assertTrue(untrained > 0);
+        assertEquals(untrained, eta.estimateMs("fries"));
+
+        train("soup", 60_000, 1);
+        assertEquals(60_000, eta.estimateMs("soup"), "too few own samples: the station's average");
+        assertEquals(60_000, eta.estimateMs("stew"), "same station");
+        assertEquals(60_000, eta.estimateMs("fries"), "other station: the overall average");
+
+        train("fries", 20_000, EtaEstimator.MIN_SAMPLES);
+        assertEquals(20_000, eta.estimateMs("fries"));
+        assertEquals(60_000, eta.estimateMs("stew"));
+    }
+
+    @Test
+    void etaIsEverythingAheadPlusItself() {
+        train("soup", 10_000, EtaEstimator.MIN_SAMPLES);
+        train("fries", 3_000, EtaEstimator.MIN_SAMPLES);
+        OrderRow a = order("soup"), b = order("fries"), c = order("soup");
+        eta.add(c);
+        eta.add(a);
+        eta.add(b);
+        eta.add(b); // a duplicate add is ignored
+        assertEquals(3, eta.size());
+        assertEquals(NOW + 10_000, eta.etaOf(a, NOW));
+        assertEquals(NOW + 13_000, eta.etaOf(b, NOW));
+        assertEquals(NOW + 23_000, eta.etaOf(c, NOW));
+
+        eta.remove(b);
+        assertEquals(-1, eta.etaOf(b, NOW));
+        assertEquals(NOW + 20_000, eta.etaOf(c, NOW));
+    }
+
+    @Test
+    void cookingHeadCountsDownButNotPastItsEstimate() {
+        train("soup", 10_000, EtaEstimator.MIN_SAMPLES);
+        OrderRow a = order("soup"), b = order("soup");
+        eta.add(a);
+        eta.add(b);
+        eta.started(a, NOW);
+        assertEquals(NOW + 4_000 + 6_000, eta.etaOf(a, NOW + 4_000));
+        assertEquals(NOW + 4_000 + 16_000, eta.etaOf(b, NOW + 4_000));
+        // running late: the head is "almost done" rather than negative
+        assertEquals(NOW + 30_000, eta.etaOf(a, NOW + 30_000));
+        assertEquals(NOW + 40_000, eta.etaOf(b, NOW + 30_000));
+
+        eta.started(b, NOW); // not the head: nothing counts down
+        assertEquals(NOW + 4_000 + 20_000, eta.etaOf(b, NOW + 4_000));
+    }
+
+    @Test
+    void learningRevaluesQueuedOrdersOfAffectedDishes() {
+        train("soup", 10_000, EtaEstimator.MIN_SAMPLES);
+        train("fries", 3_000, EtaEstimator.MIN_SAMPLES);
+        OrderRow a = order("soup"), b = order("fries");
+        eta.add(a);
+        eta.add(b);
+        eta.finished(order("soup"), 20_000); // 10s + 0.2 * 10s with the default alpha
+        long soup = eta.estimateMs("soup");
+        assertTrue(soup > 10_000);
+        assertEquals(NOW + soup, eta.etaOf(a, NOW));
+        assertEquals(NOW + soup + 3_000, eta.etaOf(b, NOW));
+    }
+
+    @Test
+    void forEachChangedReportsNewOrdersThenOnlyMovesPastTheThreshold() {
+        train("soup", 10_000, EtaEstimator.MIN_SAMPLES);
+        train("fries", 3_000, EtaEstimator.MIN_SAMPLES);
+        OrderRow a = order("soup"), b = order("fries"), c = order("soup");
+        eta.add(a);
+        eta.add(b);
+        eta.add(c);
+
+        Map<OrderRow, Long> first = changed(NOW, 5_000);
+        assertEquals(List.of(a, b, c), new ArrayList<>(first.keySet()), "queue order");
+        assertEquals(NOW + 23_000, first.get(c));
+        assertTrue(changed(NOW, 5_000).isEmpty(), "nothing moved");
+
+        eta.remove(b); // c moves 3s earlier: under the threshold
+        assertTrue(changed(NOW, 5_000).isEmpty());
+        eta.remove(a); // now 13s earlier
+        Map<OrderRow, Long> moved = changed(NOW, 5_000);
+        assertEquals(Map.of(c, NOW + 10_000), moved);
+
+        OrderRow d = order("fries");
+        eta.add(d);
+        assertEquals(Map.of(d, NOW + 13_000), changed(NOW, 5_000));
+
+        OrderRow e = order("soup");
+        eta.add(e);
+        eta.markPushed(e, eta.etaOf(e, NOW)); // already sent with the order's reply
+        assertTrue(changed(NOW, 5_000).isEmpty());
+    }
+
+    @Test
+    void theWholeQueueIsRepushedOnlyOnceTheClockHasMovedItByTheThreshold() {
+        train("soup", 10_000, EtaEstimator.MIN_SAMPLES);
+        OrderRow a = order("soup"), b = order("soup");
+        eta.add(a);
+        eta.add(b);
+        assertEquals(2, changed(NOW, 5_000).size());
+        // nothing cooking: every ETA slides with the clock
+        assertTrue(changed(NOW + 4_999, 5_000).isEmpty());
+        assertEquals(Map.of(a, NOW + 15_000, b, NOW + 25_000), changed(NOW + 5_000, 5_000));
+
+        // the head cooking on schedule keeps every ETA where it was
+        eta.started(a, NOW + 5_000);
+        assertTrue(changed(NOW + 5_000, 5_000).isEmpty());
+        assertTrue(changed(NOW + 14_000, 5_000).isEmpty());
+        // running late, the queue moves with the clock again
+        assertEquals(Map.of(a, NOW + 20_000, b, NOW + 30_000), changed(NOW + 20_000, 5_000));
+    }
+
+    @Test
+    void treapAgreesWithALinearScanUnderChurn() {
+        String[] dishes = { "soup", "stew", "fries" };
+        Random r = new Random(3);
+        for (String d : dishes) train(d, 1_000 + r.nextInt(30_000), EtaEstimator.MIN_SAMPLES);
+        List<OrderRow> queue = new ArrayList<>();
+        Set<Integer> used = new HashSet<>();
+        for (int step = 0; step < 3_000; step++) {
+            int op = r.nextInt(10);
+            if (op < 6 || queue.isEmpty()) {
+                OrderRow o = order(dishes[r.nextInt(dishes.length)]);
+                int at;
+                do { at = r.nextInt(1_000_000); } while (!used.add(at));
+                o.setLamportOrder(at); // join anywhere, not just at the tail
+                eta.add(o);
+                queue.add(o);
+            } else if (op < 9) {
+                OrderRow o = queue.remove(r.nextInt(queue.size()));
+                eta.finished(o, 1_000 + r.nextInt(30_000));
+            } else {
+                eta.remove(queue.remove(r.nextInt(queue.size())));
+            }
+            if (step % 50 == 0) {
+                queue.sort(null);
+                long ahead = 0;
+                for (OrderRow o : queue) {
+                    ahead += eta.estimateMs(o.getDish());
+                    assertEquals(NOW + ahead, eta.etaOf(o, NOW), "step " + step);
+                }
+                // with no threshold every order is reported, in queue order
+                Map<OrderRow, Long> all = changed(NOW, 0);
+                assertEquals(queue, new ArrayList<>(all.keySet()), "step " + step);
+            }
+        }
+        assertEquals(queue.size(), eta.size());
+    }
+}
@@ -0,0 +1,82 @@
+package smk.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Drives the wheel by hand through advance(); the wheel thread is never started. */
+class HashedTimingWheelTest {
+
+    // 10 ms ticks, 8 slots: one turn of the wheel is 80 ms
+    private final HashedTimingWheel wheel = new HashedTimingWheel(10, 8);
+
+    /** Ticks until the task scheduled with delayMs ran, or fails after a generous bound. */
+    private int ticksUntilRun(long delayMs) {
+        AtomicBoolean ran = new AtomicBoolean();
+        wheel.schedule(() -> ran.set(true), delayMs);
+        for (int ticks = 1; ticks <= 1000; ticks++) {
+            wheel.advance();
+            if (ran.get()) return ticks;
+        }
+        return fail("never fired");
+    }
+
+    @Test
+    void delaysAreRoundedUpToWholeTicks() {
+        assertEquals(1, ticksUntilRun(0));
+        assertEquals(1, ticksUntilRun(1));
+        assertEquals(1, ticksUntilRun(10));
+        assertEquals(3, ticksUntilRun(25));
+        assertEquals(8, ticksUntilRun(80), "exactly one turn");
+    }
+
+    @Test
+    void delaysLongerThanOneTurnWaitTheExtraRounds() {
+        // 250 ms is three turns plus a bit: firing on the first pass over its slot would be tick 1
+        assertEquals(25, ticksUntilRun(250));
+        assertEquals(17, ticksUntilRun(170));
+    }
+
+    @Test
+    void schedulingIsRelativeToTheCurrentTick() {
+        for (int i = 0; i < 5; i++) wheel.advance();
+        assertEquals(4, ticksUntilRun(40));
+    }
+
+    @Test
+    void cancelledTaskNeverRuns() {
+        AtomicBoolean ran = new AtomicBoolean();
+        HashedTimingWheel.Timeout t = wheel.schedule(() -> ran.set(true), 30);
+        t.cancel();
+        assertTrue(t.isCancelled());
+        for (int i = 0; i < 20; i++) wheel.advance();
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void tasksInTheSameSlotAllRunAndAThrowingOneDoesNotStopTheWheel() {
+        AtomicInteger ran = new AtomicInteger();
+        wheel.schedule(() -> { throw new IllegalStateException("boom"); }, 20);
+        for (int i = 0; i < 3; i++) wheel.schedule(ran::incrementAndGet, 20);
+        wheel.advance();
+        assertEquals(0, ran.get());
+        wheel.advance();
+        assertEquals(3, ran.get());
+        assertEquals(2, ticksUntilRun(20));
+    }
+
+    @Test
+    void taskMayRescheduleItself() {
+        AtomicInteger runs = new AtomicInteger();
+        Runnable[] again = new Runnable[1];
+        again[0] = () -> {
+            if (runs.incrementAndGet() < 5) wheel.schedule(again[0], 10);
+        };
+        wheel.schedule(again[0], 10);
+        for (int i = 0; i < 10; i++) wheel.advance();
+        assertEquals(5, runs.get());
+    }
+}
@@ -0,0 +1,137 @@
+package smk.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestRingTest {
+
+    /** Pre-allocated event: which producer published it and its sequence for that producer. */
+    static final class Ev {
+        int producer;
+        long seq;
+    }
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new IngestRing<>(5, 4, Ev::new, (e, end) -> {}).capacity());
+        assertEquals(8, new IngestRing<>(8, 4, Ev::new, (e, end) -> {}).capacity());
+        assertEquals(2, new IngestRing<>(0, 4, Ev::new, (e, end) -> {}).capacity());
+    }
+
+    @Test
+    void keepsEachProducersOrderAndLosesNothingThroughAFullRing() throws Exception {
+        int producers = 4, perProducer = 50_000;
+        long[] last = new long[producers];
+        Arrays.fill(last, -1);
+        AtomicInteger outOfOrder = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        CountDownLatch all = new CountDownLatch(producers * perProducer);
+        // a small ring so producers keep running into a full ring and backing off
+        IngestRing<Ev> ring = new IngestRing<>(16, 5, Ev::new, (e, end) -> {
+            if (e.seq != last[e.producer] + 1) outOfOrder.incrementAndGet();
+            last[e.producer] = e.seq;
+            all.countDown();
+        });
+        ring.start("test-ingest");
+        try {
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int id = p;
+                Thread t = new Thread(() -> {
+                    for (long s = 0; s < perProducer; s++) {
+                        if (!ring.publish((e, a, b) -> { e.producer = a; e.seq = b; }, id, s)) refused.incrementAndGet();
+                    }
+                });
+                threads.add(t);
+                t.start();
+            }
+            for (Thread t : threads) t.join(TimeUnit.SECONDS.toMillis(30));
+            assertEquals(0, refused.get());
+            assertTrue(all.await(30, TimeUnit.SECONDS), "events left in the ring: " + all.getCount());
+            assertEquals(0, outOfOrder.get());
+            for (long l : last) assertEquals(perProducer - 1, l);
+        } finally {
+            ring.stop();
+        }
+    }
+
+    @Test
+    void endOfBatchClosesEveryBatchAndBatchesStayBounded() throws Exception {
+        int events = 20_000, batchMax = 7;
+        AtomicInteger run = new AtomicInteger();
+        AtomicInteger longest = new AtomicInteger();
+        Semaphore consumed = new Semaphore(0);
+        AtomicBoolean lastWasEnd = new AtomicBoolean(true);
+        IngestRing<Ev> ring = new IngestRing<>(64, batchMax, Ev::new, (e, end) -> {
+            int n = run.incrementAndGet();
+            longest.accumulateAndGet(n, Math::max);
+            if (end) run.set(0);
+            lastWasEnd.set(end);
+            consumed.release();
+        });
+        ring.start("test-ingest");
+        try {
+            for (int i = 0; i < events; i++) ring.publish((e, a, b) -> e.seq = a, (long) i, null);
+            assertTrue(consumed.tryAcquire(events, 30, TimeUnit.SECONDS));
+            assertTrue(lastWasEnd.get(), "the last event must end its batch");
+            assertTrue(longest.get() <= batchMax, "batch of " + longest.get());
+        } finally {
+            ring.stop();
+        }
+    }
+
+    @Test
+    void parkedConsumerIsAlwaysWokenByTheNextPublish() throws Exception {
+        Semaphore consumed = new Semaphore(0);
+        IngestRing<Ev> ring = new IngestRing<>(8, 4, Ev::new, (e, end) -> consumed.release());
+        ring.start("test-ingest");
+        try {
+            // one event at a time: the consumer drains it, spins out and parks before the next,
+            // so a lost wakeup leaves an event sitting in the ring and the wait times out
+            for (int i = 0; i < 5_000; i++) {
+                ring.publish((e, a, b) -> e.seq = a, (long) i, null);
+                assertTrue(consumed.tryAcquire(5, TimeUnit.SECONDS), "event " + i + " never consumed");
+                if (i % 10 == 0) Thread.sleep(1); // let some rounds really park; the rest race it
+            }
+        } finally {
+            ring.stop();
+        }
+    }
+
+    @Test
+    void publishFailsOnceStopped() {
+        IngestRing<Ev> ring = new IngestRing<>(4, 4, Ev::new, (e, end) -> {});
+        assertFalse(ring.publish((e, a, b) -> {}, null, null), "not started yet");
+        ring.start("test-ingest");
+        assertTrue(ring.publish((e, a, b) -> {}, null, null));
+        ring.stop();
+        assertFalse(ring.publish((e, a, b) -> {}, null, null));
+    }
+
+    @Test
+    void handlerExceptionDoesNotStopTheConsumer() throws Exception {
+        Semaphore consumed = new Semaphore(0);
+        IngestRing<Ev> ring = new IngestRing<>(8, 4, Ev::new, (e, end) -> {
+            consumed.release();
+            if (e.seq == 0) throw new IllegalStateException("boom");
+        });
+        ring.start("test-ingest");
+        try {
+            ring.publish((e, a, b) -> e.seq = a, 0L, null);
+            ring.publish((e, a, b) -> e.seq = a, 1L, null);
+            assertTrue(consumed.tryAcquire(2, 5, TimeUnit.SECONDS));
+        } finally {
+            ring.stop();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package smk.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import smk.shared.OrderPriority;
+import smk.shared.OrderRow;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderHistoryStoreTest {
+
+    @TempDir Path dir;
+
+    private OrderHistoryStore store;
+
+    @AfterEach
+    void closeStore() {
+        if (store != null) store.close();
+    }
+
+    private static OrderRow row(String dish, int lamport) {
+        OrderRow r = new OrderRow("alice", dish, 3, lamport, 40 + lamport, OrderPriority.NORMAL, 0);
+        r.setSession("s\t1");
+        return r;
+    }
+
+    @Test
+    void pendingOrdersRoundTripInQueueOrder() throws IOException {
+        store = new OrderHistoryStore(dir);
+        store.savePending(List.of(row("pho", 5), row("b\u00e1nh m\u00ec", 2)));
+        List<OrderRow> back = store.takePending();
+        assertEquals(2, back.size());
+        assertEquals("pho", back.get(0).getDish());
+        assertEquals("b\u00e1nh m\u00ec", back.get(1).getDish());
+        assertEquals(2, back.get(1).getLamportOrder());
+        assertEquals(42, back.get(1).getRequestId());
+        assertEquals("s\t1", back.get(1).getSession());
+    }
+
+    @Test
+    void takenOrdersAreKeptUntilTheNextSave() throws IOException {
+        store = new OrderHistoryStore(dir);
+        store.savePending(List.of(row("pho", 1)));
+        assertEquals(1, store.takePending().size());
+        assertFalse(Files.exists(dir.resolve("pending.tsv")));
+
+        // this run dies before saving: the next start still gets the order
+        assertEquals(1, store.takePending().size());
+
+        store.savePending(List.of());
+        assertFalse(Files.exists(dir.resolve("pending.tsv.restored")));
+        assertTrue(store.takePending().isEmpty());
+    }
+
+    @Test
+    void aNewerSaveWinsOverTheRestoredCopy() throws IOException {
+        store = new OrderHistoryStore(dir);
+        store.savePending(List.of(row("pho", 1)));
+        store.takePending();
+        store.savePending(List.of(row("pho", 1), row("bun", 2)));
+        assertFalse(Files.exists(dir.resolve("pending.tsv.restored")));
+        assertEquals(2, store.takePending().size());
+    }
+}
@@ -0,0 +1,118 @@
+package smk.server;
+
+import org.junit.jupiter.api.Test;
+import smk.shared.OrderPriority;
+import smk.shared.OrderRow;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriorityOrderQueueTest {
+
+    private static final long AGING_MS = 60_000;
+
+    private final PriorityOrderQueue q = new PriorityOrderQueue(AGING_MS);
+
+    private static OrderRow order(String client, int lamport, OrderPriority p) {
+        return new OrderRow(client, "soup", 0, lamport, 0, p);
+    }
+
+    /** Promote everything due at nowMs, the way the dashboard's aging tick does. */
+    private int age(long nowMs) {
+        List<OrderRow> due = q.dueForPromotion(nowMs);
+        for (OrderRow r : due) q.promote(r);
+        return due.size();
+    }
+
+    @Test
+    void higherClassesFirstThenLamportOrder() {
+        OrderRow low = order("a", 1, OrderPriority.LOW);
+        OrderRow normal2 = order("b", 3, OrderPriority.NORMAL);
+        OrderRow normal1 = order("c", 2, OrderPriority.NORMAL);
+        OrderRow rush = order("d", 4, OrderPriority.RUSH);
+        OrderRow vip = order("e", 5, OrderPriority.VIP);
+        for (OrderRow r : List.of(low, normal2, normal1, rush, vip)) q.offer(r);
+        assertEquals(5, q.size());
+        assertEquals(2, q.sizeOf(OrderPriority.NORMAL));
+        assertEquals(List.of(rush, vip, normal1, normal2, low), q.toList());
+        assertSame(rush, q.poll());
+        assertSame(vip, q.peek());
+        assertTrue(q.remove(normal1));
+        assertFalse(q.remove(normal1));
+        assertEquals(List.of(vip, normal2, low), q.toList());
+    }
+
+    @Test
+    void cookingOrderStaysFirstWhenARushArrives() {
+        OrderRow normal = order("a", 1, OrderPriority.NORMAL);
+        q.offer(normal);
+        q.start(normal);
+        OrderRow rush = order("b", 2, OrderPriority.RUSH);
+        q.offer(rush);
+        assertSame(normal, q.peek());
+        assertSame(normal, q.poll());
+        assertSame(rush, q.poll());
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    void ordersMoveUpOneClassPerAgingPeriod() {
+        OrderRow low = order("a", 1, OrderPriority.LOW);
+        q.offer(low);
+        long t0 = low.getReceivedAt();
+        assertEquals(0, age(t0 + AGING_MS - 1));
+        assertEquals(OrderPriority.LOW.ordinal(), low.getRank());
+
+        assertEquals(1, age(t0 + AGING_MS));
+        assertEquals(OrderPriority.NORMAL.ordinal(), low.getRank());
+        assertEquals(1, q.sizeOf(OrderPriority.NORMAL));
+        assertEquals(0, age(t0 + AGING_MS), "promoted once per period");
+
+        assertEquals(1, age(t0 + 3 * AGING_MS));
+        assertEquals(1, age(t0 + 3 * AGING_MS), "a late tick catches up one class at a time");
+        assertEquals(OrderPriority.RUSH.ordinal(), low.getRank());
+        assertEquals(0, age(t0 + 100 * AGING_MS), "RUSH is as high as it goes");
+    }
+
+    @Test
+    void agedOrderKeepsItsLamportPlaceInTheNewClass() {
+        OrderRow old = order("a", 1, OrderPriority.NORMAL);
+        OrderRow vipEarly = order("b", 0, OrderPriority.VIP);
+        OrderRow vipLate = order("c", 2, OrderPriority.VIP);
+        q.offer(old);
+        q.offer(vipEarly);
+        q.offer(vipLate);
+        age(vipLate.getReceivedAt() + AGING_MS); // the last one created: all three are due
+        // the VIPs aged too, to RUSH, so they still come first
+        assertEquals(List.of(vipEarly, vipLate, old), q.toList());
+        assertEquals(OrderPriority.VIP.ordinal(), old.getRank());
+
+        OrderRow vipNew = order("d", 3, OrderPriority.VIP);
+        q.offer(vipNew);
+        assertEquals(List.of(vipEarly, vipLate, old, vipNew), q.toList());
+    }
+
+    @Test
+    void removedAndCookingOrdersStopAging() {
+        OrderRow a = order("a", 1, OrderPriority.LOW);
+        OrderRow b = order("b", 2, OrderPriority.LOW);
+        q.offer(a);
+        q.offer(b);
+        q.start(a);
+        q.remove(b);
+        assertEquals(0, age(a.getReceivedAt() + 10 * AGING_MS));
+        assertEquals(-1, a.getRank());
+    }
+
+    @Test
+    void agingOffNeverPromotes() {
+        PriorityOrderQueue off = new PriorityOrderQueue(0);
+        OrderRow low = order("a", 1, OrderPriority.LOW);
+        off.offer(low);
+        assertTrue(off.dueForPromotion(Long.MAX_VALUE).isEmpty());
+        off.clear();
+        assertTrue(off.isEmpty());
+        assertNull(off.poll());
+    }
+}
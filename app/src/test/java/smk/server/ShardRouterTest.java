@@ -0,0 +1,68 @@
+package smk.server;
+
+import org.junit.jupiter.api.Test;
+import smk.shared.LamportClock;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRouterTest {
+
+    @Test
+    void oneShardUsesTheServerClock() {
+        LamportClock merged = new LamportClock();
+        ShardRouter r = new ShardRouter(merged, 1);
+        assertEquals(1, r.size());
+        assertSame(merged, r.shardFor("alice").getClock());
+        assertSame(r.shardFor("alice"), r.shardFor("bob"));
+        assertEquals(1, new ShardRouter(merged, 0).size(), "at least one shard");
+    }
+
+    @Test
+    void clientsStickToOneShardAndSpreadOverAll() {
+        LamportClock merged = new LamportClock();
+        ShardRouter r = new ShardRouter(merged, 4);
+        Set<Integer> used = new HashSet<>();
+        Set<LamportClock> clocks = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            String client = "terminal-" + i;
+            ShardRouter.Shard s = r.shardFor(client);
+            assertSame(s, r.shardFor(client));
+            assertTrue(s.getId() >= 0 && s.getId() < 4);
+            used.add(s.getId());
+            clocks.add(s.getClock());
+        }
+        assertEquals(4, used.size());
+        assertEquals(4, clocks.size(), "a clock per shard");
+        assertFalse(clocks.contains(merged));
+        assertEquals(0, r.shardFor(null).getId());
+    }
+
+    @Test
+    void dedupeWindowRecallsAssignedLamportValues() {
+        ShardRouter.Shard s = new ShardRouter(new LamportClock(), 1).shardFor("alice");
+        assertNull(s.recall("sess|alice|1"));
+        s.remember("sess|alice|1", 7);
+        s.remember("sess|alice|2", 8);
+        assertEquals(7, s.recall("sess|alice|1"));
+        assertEquals(8, s.recall("sess|alice|2"));
+        assertNull(s.recall("other|alice|1"));
+
+        s.remember(null, 9); // no key: counted, not remembered
+        assertNull(s.recall(null));
+    }
+
+    @Test
+    void dedupeWindowForgetsTheOldestBeyondItsBound() {
+        ShardRouter.Shard s = new ShardRouter(new LamportClock(), 1).shardFor("alice");
+        s.remember("first", 1);
+        for (int i = 0; i < 9_999; i++) s.remember("k" + i, i);
+        assertEquals(1, s.recall("first"), "window holds 10 000");
+        s.remember("one-more", 0);
+        assertNull(s.recall("first"));
+        assertEquals(0, s.recall("k0"));
+        assertEquals(0, s.recall("one-more"));
+    }
+}
@@ -0,0 +1,221 @@
+package smk.shared;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineChannelTest {
+
+    /** Serves reads from scripted chunks, then end of stream; records every write call. */
+    static final class ScriptedChannel implements ByteChannel, GatheringByteChannel {
+        private final Deque<byte[]> reads = new ArrayDeque<>();
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private int writeCalls;
+        private volatile boolean open = true;
+
+        ScriptedChannel(byte[]... chunks) {
+            reads.addAll(Arrays.asList(chunks));
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            byte[] c = reads.poll();
+            if (c == null) return -1;
+            int n = Math.min(dst.remaining(), c.length);
+            dst.put(c, 0, n);
+            if (n < c.length) reads.addFirst(Arrays.copyOfRange(c, n, c.length));
+            return n;
+        }
+
+        @Override
+        public synchronized long write(ByteBuffer[] srcs, int offset, int length) {
+            writeCalls++;
+            long n = 0;
+            for (int i = offset; i < offset + length; i++) {
+                byte[] b = new byte[srcs[i].remaining()];
+                srcs[i].get(b);
+                written.write(b, 0, b.length);
+                n += b.length;
+            }
+            return n;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) { return write(srcs, 0, srcs.length); }
+
+        @Override
+        public int write(ByteBuffer src) { return (int) write(new ByteBuffer[] { src }, 0, 1); }
+
+        synchronized int writeCalls() { return writeCalls; }
+
+        synchronized String written() { return written.toString(StandardCharsets.UTF_8); }
+
+        @Override
+        public boolean isOpen() { return open; }
+
+        @Override
+        public void close() { open = false; }
+    }
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "test-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @AfterEach
+    void stopFlusher() {
+        flusher.shutdownNow();
+    }
+
+    private static byte[] utf8(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+
+    private static void await(BooleanSupplier done) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!done.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void readsLinesSplitAcrossReads() throws IOException {
+        byte[] e = utf8("\u00e9"); // two bytes: split the character itself between reads
+        ScriptedChannel ch = new ScriptedChannel(utf8("{\"a\":1}\n{\"b\""), utf8(":2}\ncaf"),
+                new byte[] { e[0] }, new byte[] { e[1], '\n' });
+        LineChannel in = new LineChannel(ch, flusher, 16);
+        assertEquals("{\"a\":1}", in.readLine());
+        assertEquals("{\"b\":2}", in.readLine());
+        assertEquals("caf\u00e9", in.readLine());
+        assertNull(in.readLine());
+        assertEquals(22, in.bytesRead());
+    }
+
+    @Test
+    void stripsCarriageReturnAndReturnsAnUnterminatedLastLine() throws IOException {
+        LineChannel in = new LineChannel(new ScriptedChannel(utf8("one\r\n\ntwo")), flusher, 16);
+        assertEquals("one", in.readLine());
+        assertEquals("", in.readLine());
+        assertEquals("two", in.readLine());
+        assertNull(in.readLine());
+    }
+
+    @Test
+    void lineOverTheLimitFailsTheRead() {
+        byte[] big = new byte[64 * 1024 + 1];
+        Arrays.fill(big, (byte) 'x');
+        // arrive in small reads so the limit is enforced while the line is still partial
+        byte[][] chunks = new byte[big.length / 1000 + 2][];
+        for (int i = 0; i < chunks.length - 1; i++) {
+            chunks[i] = Arrays.copyOfRange(big, Math.min(big.length, i * 1000), Math.min(big.length, (i + 1) * 1000));
+        }
+        chunks[chunks.length - 1] = new byte[] { '\n' };
+        LineChannel in = new LineChannel(new ScriptedChannel(chunks), flusher, 16);
+        IOException e = assertThrows(IOException.class, in::readLine);
+        assertTrue(e.getMessage().contains("longer than"), e.getMessage());
+    }
+
+    @Test
+    void lineAtTheLimitIsAccepted() throws IOException {
+        byte[] max = new byte[64 * 1024 + 1];
+        Arrays.fill(max, (byte) 'y');
+        max[max.length - 1] = '\n';
+        LineChannel in = new LineChannel(new ScriptedChannel(max), flusher, 16);
+        assertEquals(64 * 1024, in.readLine().length());
+    }
+
+    @Test
+    void uncorkedSendIsWrittenAtOnce() throws Exception {
+        ScriptedChannel ch = new ScriptedChannel();
+        LineChannel out = new LineChannel(ch, flusher, 16);
+        assertTrue(out.send(LineChannel.frame("hello")));
+        await(() -> ch.written().equals("hello\n"));
+        await(() -> out.queued() == 0);
+        out.close();
+    }
+
+    @Test
+    void corkedFramesGoOutTogetherOnUncork() throws Exception {
+        // hold the flusher's only thread so the deferred-flush bound can't fire during the test
+        CountDownLatch release = new CountDownLatch(1);
+        flusher.execute(() -> {
+            try { release.await(); } catch (InterruptedException ignored) {}
+        });
+        ScriptedChannel ch = new ScriptedChannel();
+        LineChannel out = new LineChannel(ch, flusher, 16);
+        try {
+            out.cork();
+            for (int i = 0; i < 3; i++) assertTrue(out.send(LineChannel.frame("m" + i)));
+            Thread.sleep(50);
+            assertEquals(0, ch.writeCalls(), "written while corked");
+            assertEquals(3, out.queued());
+            out.uncork();
+            await(() -> out.queued() == 0);
+            assertEquals("m0\nm1\nm2\n", ch.written());
+            assertEquals(1, ch.writeCalls(), "one gathering write for the batch");
+        } finally {
+            release.countDown();
+            out.close();
+        }
+    }
+
+    @Test
+    void nestedCorksHoldUntilTheLastUncork() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        flusher.execute(() -> {
+            try { release.await(); } catch (InterruptedException ignored) {}
+        });
+        ScriptedChannel ch = new ScriptedChannel();
+        LineChannel out = new LineChannel(ch, flusher, 16);
+        try {
+            out.cork();
+            out.cork();
+            out.send(LineChannel.frame("a"));
+            out.uncork();
+            Thread.sleep(50);
+            assertEquals("", ch.written());
+            out.uncork();
+            await(() -> ch.written().equals("a\n"));
+        } finally {
+            release.countDown();
+            out.close();
+        }
+    }
+
+    @Test
+    void refusesFramesOverTheQueueLimitAndAfterClose() {
+        CountDownLatch release = new CountDownLatch(1);
+        flusher.execute(() -> {
+            try { release.await(); } catch (InterruptedException ignored) {}
+        });
+        ScriptedChannel ch = new ScriptedChannel();
+        LineChannel out = new LineChannel(ch, flusher, 2);
+        try {
+            out.cork();
+            assertTrue(out.send(LineChannel.frame("1")));
+            assertTrue(out.send(LineChannel.frame("2")));
+            assertFalse(out.send(LineChannel.frame("3")));
+            out.close();
+            assertFalse(out.send(LineChannel.frame("4")));
+            assertFalse(ch.isOpen());
+        } finally {
+            release.countDown();
+        }
+    }
+}
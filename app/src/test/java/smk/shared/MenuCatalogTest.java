@@ -0,0 +1,113 @@
+package smk.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MenuCatalogTest {
+
+    private static MenuCatalog.Snapshot parse(String csv) {
+        return MenuCatalog.parse(ByteBuffer.wrap(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void parsesEveryFieldAndSkipsCommentsAndBlankLines() {
+        MenuCatalog.Snapshot s = parse("# id,name,stem,price,tags,station\n"
+                + "\n"
+                + "pizza, Pizza ,pizza,18,vegan|POPULAR,oven\r\n"
+                + "soupe,Soupe \u00e0 l'oignon,soupe,9\n"
+                + "frites,Frites,frites, 4 ,,fryer");
+        assertEquals(3, s.getDishes().size());
+        Dish pizza = s.byId("pizza");
+        assertEquals("Pizza", pizza.getName());
+        assertEquals("pizza", pizza.getStem());
+        assertEquals(18, pizza.getPrice());
+        assertTrue(pizza.isVegan());
+        assertTrue(pizza.isPopular());
+        assertEquals("oven", pizza.getStation());
+
+        Dish soupe = s.byId("soupe");
+        assertEquals("Soupe \u00e0 l'oignon", soupe.getName());
+        assertFalse(soupe.isVegan() || soupe.isPopular());
+        assertEquals("", soupe.getStation());
+
+        Dish frites = s.byId("frites");
+        assertEquals(4, frites.getPrice());
+        assertEquals("fryer", frites.getStation(), "last line needs no newline");
+    }
+
+    @Test
+    void rejectsLinesWithoutAPriceOrAnId() {
+        MenuCatalog.Snapshot s = parse("a,A,a,12\n"
+                + "b,B,b,douze\n"   // not a number
+                + "c,C,c,-3\n"      // negative
+                + "d,D,d,\n"        // empty price
+                + ",E,e,5\n"        // no id
+                + "f,F\n");         // too few fields
+        List<String> ids = new ArrayList<>();
+        for (Dish d : s.getDishes()) ids.add(d.getId());
+        assertEquals(List.of("a"), ids);
+    }
+
+    @Test
+    void resolvesByIdThenByNameIgnoringCase() {
+        MenuCatalog.Snapshot s = parse("burger,Burger,burger,12\nbg,burger,bg,10\n");
+        assertEquals("burger", s.resolve("burger").getId(), "an id wins over a name");
+        assertEquals("burger", s.resolve("BURGER").getId());
+        assertEquals("bg", s.resolve("bg").getId());
+        assertNull(s.resolve("pizza"));
+        assertNull(s.resolve(null));
+    }
+
+    @Test
+    void longLinesAreParsedWhole() {
+        String name = "x".repeat(1000);
+        MenuCatalog.Snapshot s = parse("long," + name + ",long,7\nshort,S,s,1\n");
+        assertEquals(name, s.byId("long").getName());
+        assertEquals(1, s.byId("short").getPrice());
+    }
+
+    @Test
+    void versionFollowsTheContent() {
+        assertEquals(parse("a,A,a,1\n").getVersion(), parse("a,A,a,1\n").getVersion());
+        assertNotEquals(parse("a,A,a,1\n").getVersion(), parse("a,A,a,2\n").getVersion());
+    }
+
+    @Test
+    void loadKeepsThePreviousSnapshotWhenTheFileGoesAway() throws IOException {
+        Path dir = Files.createTempDirectory("menu");
+        Path file = dir.resolve("catalog.csv");
+        Files.writeString(file, "a,A,a,1\nb,B,b,2\n");
+        List<MenuCatalog.Snapshot> seen = new ArrayList<>();
+        MenuCatalog c = new MenuCatalog(file, new MenuCatalog.Listener() {
+            @Override public void onCatalog(MenuCatalog.Snapshot snapshot) { seen.add(snapshot); }
+            @Override public void onLog(String msg) {}
+        });
+        MenuCatalog.Snapshot first = c.load();
+        assertEquals(2, first.getDishes().size());
+        assertEquals(1, seen.size());
+
+        MenuCatalog.Snapshot again = c.load(); // same content: no new notification
+        assertEquals(first.getVersion(), again.getVersion());
+        assertEquals(1, seen.size());
+
+        Files.delete(file);
+        assertSame(again, c.load());
+        Files.delete(dir);
+    }
+
+    @Test
+    void bundledCatalogLoads() {
+        MenuCatalog.Snapshot s = new MenuCatalog(null, null).load();
+        assertNotNull(s);
+        assertFalse(s.getDishes().isEmpty());
+    }
+}
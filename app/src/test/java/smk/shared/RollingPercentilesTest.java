@@ -0,0 +1,110 @@
+package smk.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingPercentilesTest {
+
+    @Test
+    void emptyWindowHasNoPercentiles() {
+        RollingPercentiles p = new RollingPercentiles(60, 6);
+        assertEquals(0, p.count());
+        assertEquals(-1, p.percentile(50));
+        assertArrayEquals(new long[] { -1, -1 }, p.percentiles(50, 99));
+    }
+
+    @Test
+    void bucketUpperBoundCoversTheValueWithinTheStatedError() {
+        Random r = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long v = i < 10_000 ? i : (long) Math.exp(r.nextDouble() * Math.log(1L << 40));
+            long up = RollingPercentiles.upperBound(RollingPercentiles.bucket(v));
+            assertTrue(up >= v, v + " reported as " + up);
+            assertTrue(up <= Math.max(3, v + v / 4 + 1), v + " reported as " + up);
+        }
+    }
+
+    @Test
+    void bucketsAreMonotonic() {
+        int prev = -1;
+        for (long v = 0; v < 100_000; v++) {
+            int b = RollingPercentiles.bucket(v);
+            assertTrue(b >= prev, "bucket went back at " + v);
+            prev = b;
+        }
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        RollingPercentiles p = new RollingPercentiles(60, 6);
+        p.record(-5);
+        assertEquals(1, p.count());
+        assertEquals(0, p.percentile(100));
+    }
+
+    @Test
+    void percentilesOfAUniformSpreadAreCloseAndOrdered() {
+        RollingPercentiles p = new RollingPercentiles(60, 6);
+        List<Long> values = new ArrayList<>();
+        for (long v = 1; v <= 1000; v++) values.add(v);
+        Collections.shuffle(values, new Random(7));
+        for (long v : values) p.record(v);
+        assertEquals(1000, p.count());
+        long[] q = p.percentiles(50, 90, 99, 100);
+        assertTrue(q[0] >= 500 && q[0] <= 625, "p50=" + q[0]);
+        assertTrue(q[1] >= 900 && q[1] <= 1125, "p90=" + q[1]);
+        assertTrue(q[2] >= 990 && q[2] <= 1238, "p99=" + q[2]);
+        assertTrue(q[3] >= 1000, "p100=" + q[3]);
+        for (int k = 1; k < q.length; k++) assertTrue(q[k] >= q[k - 1]);
+        assertEquals(q[0], p.percentile(50));
+    }
+
+    @Test
+    void valuesAgeOutOfTheWindow() {
+        AtomicLong now = new AtomicLong(10_000);
+        RollingPercentiles p = new RollingPercentiles(1, 2, now::get); // two 500 ms slots
+        p.record(1);
+        now.addAndGet(499);
+        p.record(2);
+        assertEquals(2, p.count());
+
+        now.addAndGet(1); // next slot: the first one is still inside the window
+        p.record(3);
+        assertEquals(3, p.count());
+        assertEquals(3, p.percentile(100));
+
+        now.addAndGet(500); // the first slot is reused, dropping 1 and 2
+        assertEquals(1, p.count());
+        p.record(7);
+        assertEquals(2, p.count());
+        assertEquals(7, p.percentile(100));
+
+        now.addAndGet(1_000);
+        assertEquals(0, p.count());
+        assertEquals(-1, p.percentile(50));
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws InterruptedException {
+        // a stopped clock, and the slot claimed up front: a reset (which may drop writes
+        // racing with it) can't land inside the run
+        RollingPercentiles p = new RollingPercentiles(60, 6, () -> 0L);
+        p.record(0);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 25_000; i++) p.record(i % 500);
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(100_001, p.count());
+    }
+}